@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("io.github.goooler.shadow") version "8.1.8"
     id("maven-publish")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.github.spigotcvn"
@@ -23,6 +24,14 @@ dependencies {
     implementation("org.eclipse.jgit:org.eclipse.jgit:4.6.0.201612231935-r")
     implementation("com.google.code.gson:gson:2.11.0")
     implementation("com.google.guava:guava:33.2.0-jre")
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 tasks.jar {
@@ -32,6 +41,17 @@ tasks.jar {
     }
 }
 
+jmh {
+    // throughput plus allocation rate, run with ./gradlew jmh
+    benchmarkMode.set(listOf("thrpt"))
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // the benchmarks share the generated mappings fixture with the tests
+    includeTests.set(true)
+}
+
 tasks.compileJava {
     // Set the target and source java version to java 8
     JavaVersion.VERSION_1_8.toString().also {
@@ -0,0 +1,96 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares the channel based {@link IOUtils#copy(InputStream, OutputStream)} with the 1 KB array loop it replaced,
+ * on files the size of mojang mappings.
+ * File to file copies take the transferTo path, copies from other streams, like a download, take the transferFrom path.
+ */
+@State(Scope.Benchmark)
+public class CopyBenchmark {
+    @Param({"10"})
+    public int megabytes;
+
+    private File directory;
+    private File source;
+    private File target;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("copy-benchmark").toFile();
+        source = new File(directory, "source.bin");
+        target = new File(directory, "target.bin");
+
+        byte[] data = new byte[megabytes * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        Files.write(source.toPath(), data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        IOUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public long fileToFile() throws IOException {
+        try (InputStream input = new FileInputStream(source);
+             OutputStream output = new FileOutputStream(target)) {
+            IOUtils.copy(input, output);
+        }
+        return target.length();
+    }
+
+    @Benchmark
+    public long fileToFileLegacy() throws IOException {
+        try (InputStream input = new FileInputStream(source);
+             OutputStream output = new FileOutputStream(target)) {
+            legacyCopy(input, output);
+        }
+        return target.length();
+    }
+
+    @Benchmark
+    public long streamToFile() throws IOException {
+        // anything but a plain FileInputStream is read like a network stream
+        try (InputStream input = new BufferedInputStream(new FileInputStream(source));
+             OutputStream output = new FileOutputStream(target)) {
+            IOUtils.copy(input, output);
+        }
+        return target.length();
+    }
+
+    @Benchmark
+    public long streamToFileLegacy() throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(source));
+             OutputStream output = new FileOutputStream(target)) {
+            legacyCopy(input, output);
+        }
+        return target.length();
+    }
+
+    // the loop IOUtils.copy used before, kept here as the baseline
+    private static void legacyCopy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[1024];
+        int bytesRead;
+        while ((bytesRead = input.read(buffer)) != -1) {
+            output.write(buffer, 0, bytesRead);
+        }
+        output.flush();
+    }
+}
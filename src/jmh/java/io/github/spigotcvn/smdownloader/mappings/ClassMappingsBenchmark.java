@@ -0,0 +1,126 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the interned {@link ClassMappings} of {@link MapUtil} with the {@link HashBiMap} they replaced,
+ * for building the class mappings, resolving class names and remapping descriptors.
+ * The gc profiler shows the allocations, the retained size is smaller as well since a mapping is a few ints.
+ */
+@State(Scope.Benchmark)
+public class ClassMappingsBenchmark {
+    @Param({"9000"})
+    public int classes;
+
+    private MappingsFixture fixture;
+    private String[][] pairs;
+    private BiMap<String, String> biMap;
+    private ClassMappings classMappings;
+
+    private String[] memberClasses;
+    private String[] descriptors;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = MappingsFixture.generate(classes, 1);
+        List<String[]> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(fixture.getClassMappings().toPath())) {
+            String[] split = line.split(" ");
+            if (line.startsWith("#") || split.length != 2) continue;
+            lines.add(split);
+        }
+        pairs = lines.toArray(new String[0][]);
+        biMap = loadBiMap();
+        classMappings = loadClassMappings();
+
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(fixture.getClassMappings());
+        File members = new File(fixture.getDirectory(), "members.csrg");
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), members, true);
+        List<String> classNames = new ArrayList<>();
+        List<String> methodDescriptors = new ArrayList<>();
+        for (String line : Files.readAllLines(members.toPath())) {
+            String[] split = line.split(" ");
+            if (line.startsWith("#")) continue;
+            classNames.add(split[0]);
+            if (split.length == 4) {
+                methodDescriptors.add(split[2]);
+            }
+        }
+        memberClasses = classNames.toArray(new String[0]);
+        descriptors = methodDescriptors.toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public BiMap<String, String> loadBiMap() {
+        BiMap<String, String> map = HashBiMap.create();
+        for (String[] pair : pairs) {
+            map.put(pair[0], pair[1]);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public ClassMappings loadClassMappings() {
+        ClassMappings mappings = new ClassMappings(new SymbolTable());
+        for (String[] pair : pairs) {
+            mappings.put(pair[0], pair[1]);
+        }
+        return mappings;
+    }
+
+    @Benchmark
+    public void resolveBiMap(Blackhole blackhole) {
+        for (String memberClass : memberClasses) {
+            blackhole.consume(MapUtil.deobfClass(memberClass, biMap.inverse()));
+        }
+    }
+
+    @Benchmark
+    public void resolveClassMappings(Blackhole blackhole) {
+        ClassMappings inverse = classMappings.inverse();
+        for (String memberClass : memberClasses) {
+            blackhole.consume(inverse.map(memberClass));
+        }
+    }
+
+    @Benchmark
+    public void remapDescriptorsBiMap(Blackhole blackhole) {
+        StringBuilder out = new StringBuilder();
+        for (String descriptor : descriptors) {
+            out.setLength(0);
+            MapUtil.appendObf(descriptor, biMap.inverse(), out);
+            blackhole.consume(out.length());
+        }
+    }
+
+    @Benchmark
+    public void remapDescriptorsClassMappings(Blackhole blackhole) {
+        StringBuilder out = new StringBuilder();
+        ClassMappings inverse = classMappings.inverse();
+        for (String descriptor : descriptors) {
+            out.setLength(0);
+            MapUtil.appendObf(descriptor, inverse, out);
+            blackhole.consume(out.length());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the cursor based descriptor remapper with the previous substring based one
+ * on descriptors with many arguments, class types and nested arrays.
+ */
+@State(Scope.Benchmark)
+public class DescriptorBenchmark {
+    private static final char[] PRIMITIVES = {'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z'};
+
+    @Param({"20000"})
+    public int descriptorCount;
+
+    private Map<String, String> map;
+    private String[] descriptors;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        String[] classes = new String[2000];
+        map = new HashMap<>();
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = "net/minecraft/server/level/SomeClass" + i;
+            // leave a few classes unmapped, like classes from other libraries
+            if (i % 8 != 0) {
+                map.put(classes[i], "c" + Integer.toString(i, 36));
+            }
+        }
+
+        descriptors = new String[descriptorCount];
+        for (int i = 0; i < descriptors.length; i++) {
+            StringBuilder desc = new StringBuilder("(");
+            int args = random.nextInt(7);
+            for (int j = 0; j < args; j++) {
+                appendType(desc, random, classes);
+            }
+            desc.append(')');
+            if (random.nextInt(3) == 0) {
+                desc.append('V');
+            } else {
+                appendType(desc, random, classes);
+            }
+            descriptors[i] = desc.toString();
+        }
+    }
+
+    private static void appendType(StringBuilder desc, Random random, String[] classes) {
+        int dimensions = random.nextInt(6) < 4 ? 0 : 1 + random.nextInt(3);
+        for (int i = 0; i < dimensions; i++) {
+            desc.append('[');
+        }
+        if (random.nextInt(3) == 0) {
+            desc.append(PRIMITIVES[random.nextInt(PRIMITIVES.length)]);
+        } else {
+            desc.append('L').append(classes[random.nextInt(classes.length)]).append(';');
+        }
+    }
+
+    @Benchmark
+    public void cursor(Blackhole blackhole) {
+        for (String descriptor : descriptors) {
+            blackhole.consume(MapUtil.toObf(descriptor, map));
+        }
+    }
+
+    @Benchmark
+    public void cursorReusedBuilder(Blackhole blackhole) {
+        StringBuilder builder = new StringBuilder();
+        for (String descriptor : descriptors) {
+            builder.setLength(0);
+            MapUtil.appendObf(descriptor, map, builder);
+            blackhole.consume(builder.length());
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String descriptor : descriptors) {
+            blackhole.consume(legacyToObf(descriptor, map));
+        }
+    }
+
+    // the substring based remapper MapUtil used before, kept here as the baseline
+    private static String legacyToObf(String desc, Map<String, String> map) {
+        desc = desc.substring(1);
+        StringBuilder out = new StringBuilder("(");
+        if (desc.charAt(0) == ')') {
+            desc = desc.substring(1);
+            out.append(')');
+        }
+        while (desc.length() > 0) {
+            desc = legacyObfType(desc, map, out);
+            if (desc.length() > 0 && desc.charAt(0) == ')') {
+                desc = desc.substring(1);
+                out.append(')');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String legacyObfType(String desc, Map<String, String> map, StringBuilder out) {
+        int size = 1;
+        switch (desc.charAt(0)) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+            case 'V':
+                out.append(desc.charAt(0));
+                break;
+            case '[':
+                out.append("[");
+                return legacyObfType(desc.substring(1), map, out);
+            case 'L':
+                String type = desc.substring(1, desc.indexOf(";"));
+                size += type.length() + 1;
+                out.append("L").append(map.containsKey(type) ? map.get(type) : type).append(";");
+        }
+        return desc.substring(size);
+    }
+}
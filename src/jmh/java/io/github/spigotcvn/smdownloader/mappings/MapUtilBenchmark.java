@@ -0,0 +1,108 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks for the hot paths of {@link MapUtil}, run over a generated fixture the size of modern mappings.
+ */
+@State(Scope.Benchmark)
+public class MapUtilBenchmark {
+    @Param({"9000"})
+    public int classes;
+
+    private MappingsFixture fixture;
+    private MapUtil loaded;
+    private File members;
+    private File output;
+
+    private Map<String, String> buk2Obf;
+    private String[] memberClasses;
+    private String[] descriptors;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = MappingsFixture.generate(classes, 1);
+        output = new File(fixture.getDirectory(), "output.csrg");
+        members = new File(fixture.getDirectory(), "members.csrg");
+
+        loaded = new MapUtil();
+        loaded.loadBuk(fixture.getClassMappings());
+        loaded.makeFieldMaps(fixture.getMojangMappings(), members, true);
+
+        // the same lookups makeCombinedMaps does, from spigot names back to obfuscated names
+        buk2Obf = new HashMap<>();
+        for (String line : Files.readAllLines(fixture.getClassMappings().toPath())) {
+            String[] split = line.split(" ");
+            if (line.startsWith("#") || split.length != 2) continue;
+            buk2Obf.put(split[1], split[0]);
+        }
+
+        List<String> classNames = new ArrayList<>();
+        List<String> methodDescriptors = new ArrayList<>();
+        for (String line : Files.readAllLines(members.toPath())) {
+            String[] split = line.split(" ");
+            if (line.startsWith("#")) continue;
+            classNames.add(split[0]);
+            if (split.length == 4) {
+                methodDescriptors.add(split[2]);
+            }
+        }
+        memberClasses = classNames.toArray(new String[0]);
+        descriptors = methodDescriptors.toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.delete();
+    }
+
+    @Benchmark
+    public MapUtil loadBuk() throws IOException {
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(fixture.getClassMappings());
+        return mapUtil;
+    }
+
+    @Benchmark
+    public void makeFieldMapsWithMethods() throws IOException {
+        loaded.makeFieldMaps(fixture.getMojangMappings(), output, true);
+    }
+
+    @Benchmark
+    public void makeFieldMapsWithoutMethods() throws IOException {
+        loaded.makeFieldMaps(fixture.getMojangMappings(), output, false);
+    }
+
+    @Benchmark
+    public void makeCombinedMaps() throws IOException {
+        loaded.makeCombinedMaps(output, members);
+    }
+
+    @Benchmark
+    public void toObf(Blackhole blackhole) {
+        for (String descriptor : descriptors) {
+            blackhole.consume(MapUtil.toObf(descriptor, buk2Obf));
+        }
+    }
+
+    @Benchmark
+    public void deobfClass(Blackhole blackhole) {
+        for (String memberClass : memberClasses) {
+            blackhole.consume(MapUtil.deobfClass(memberClass, buk2Obf));
+        }
+    }
+}
@@ -4,7 +4,15 @@ import io.github.spigotcvn.smdownloader.mappings.MappingFile;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class Main {
     public static void main(String[] args) {
@@ -12,11 +20,18 @@ public class Main {
         parser.allowsUnrecognizedOptions();
 
         parser.accepts("help").forHelp();
-        parser.accepts("version").withRequiredArg().required();
+        // options a requirement depends on have to be declared before it
+        parser.accepts("versions").withRequiredArg();
+        parser.accepts("serve").withOptionalArg().defaultsTo(String.valueOf(MappingsServer.DEFAULT_PORT));
+        parser.accepts("version").requiredUnless("versions", "serve").withRequiredArg();
+        parser.accepts("threads").withRequiredArg().defaultsTo(String.valueOf(Runtime.getRuntime().availableProcessors()));
         parser.accepts("spigot");
         parser.accepts("mojang");
         parser.accepts("generate-combined");
         parser.accepts("dir").withRequiredArg().defaultsTo("builddata-{rev}");
+        parser.accepts("mirror").withRequiredArg();
+        parser.accepts("cache").withRequiredArg();
+        parser.accepts("max-versions").withRequiredArg().defaultsTo(String.valueOf(MappingsServer.DEFAULT_MAX_VERSIONS));
 
         OptionSet options = parser.parse(args);
         if(options.has("help")) {
@@ -24,25 +39,96 @@ public class Main {
             System.out.println("Options:");
             System.out.println("  --help               Show this help message");
             System.out.println("  --version <version>  The version of the mappings to download");
+            System.out.println("  --versions <list>    A comma separated list of versions to download at once");
+            System.out.println("  --threads <count>    How many versions of --versions to process at the same time");
+            System.out.println("                       Default: the amount of available processors");
             System.out.println("  --spigot             Download Spigot mappings");
             System.out.println("  --mojang             Download Mojang mappings, will error if the version is not available");
             System.out.println("  --generate-combined  Generate combined spigot mappings");
             System.out.println("  --dir <dir>          The directory to download the mappings to");
             System.out.println("                       You can use {rev} to insert the version");
             System.out.println("                       Default: builddata-{rev}");
+            System.out.println("  --mirror <dir>       The bare builddata repository shared between versions");
+            System.out.println("                       Default: builddata.git next to --dir");
+            System.out.println("  --cache <dir>        The cache for downloaded version data and mojang mappings");
+            System.out.println("                       Default: download-cache next to --dir");
+            System.out.println("  --serve [port]       Answer mapping lookups over HTTP on localhost until stopped");
+            System.out.println("                       Default port: " + MappingsServer.DEFAULT_PORT);
+            System.out.println("  --max-versions <n>   How many versions --serve keeps in memory");
+            System.out.println("                       Default: " + MappingsServer.DEFAULT_MAX_VERSIONS);
             System.exit(0);
         }
 
-        String version = (String) options.valueOf("version");
-        String dir = ((String) options.valueOf("dir")).replaceAll("\\{rev}", version);
+        String dirPattern = (String) options.valueOf("dir");
+        File mirrorDir = options.has("mirror") ? new File((String) options.valueOf("mirror")) : null;
+        File cacheDir = options.has("cache") ? new File((String) options.valueOf("cache")) : null;
 
         boolean downloadSpigotMappings = options.has("spigot");
         boolean downloadMojangMappings = options.has("mojang");
         boolean generateCombined = options.has("generate-combined");
 
-        SpigotMappingsDownloader mappinger = new SpigotMappingsDownloader(new File(dir), version);
+        if(options.has("serve")) {
+            int port = Integer.parseInt((String) options.valueOf("serve"));
+            int maxVersions = Integer.parseInt((String) options.valueOf("max-versions"));
+            int threads = Integer.parseInt((String) options.valueOf("threads"));
+            try {
+                MappingsServer server = new MappingsServer(port, dirPattern, SpigotMappingsDownloader.BUILDDATA_REPO,
+                        mirrorDir, cacheDir, maxVersions, threads);
+                System.out.println("Serving mappings on http://localhost:" + server.getPort() + "/");
+                // the request threads are daemons, keep the jvm alive until it is killed
+                Thread.currentThread().join();
+            } catch(IOException e) {
+                System.out.println("Unable to start the server: " + e.getMessage());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        if(options.has("versions")) {
+            List<String> versions = new ArrayList<>();
+            for(String version : ((String) options.valueOf("versions")).split(",")) {
+                if(!version.trim().isEmpty()) versions.add(version.trim());
+            }
+            int threads = Integer.parseInt((String) options.valueOf("threads"));
+
+            try(MappingsBatch batch = new MappingsBatch(dirPattern, SpigotMappingsDownloader.BUILDDATA_REPO, mirrorDir, cacheDir, threads)) {
+                Map<String, CompletableFuture<String>> results = batch.submit(versions, mappinger -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    try(PrintStream out = new PrintStream(output)) {
+                        run(mappinger, downloadSpigotMappings, downloadMojangMappings, generateCombined, out);
+                    }
+                    return output.toString();
+                });
+
+                for(Map.Entry<String, CompletableFuture<String>> result : results.entrySet()) {
+                    try {
+                        System.out.print(result.getValue().get());
+                    } catch(ExecutionException e) {
+                        System.out.println("Failed to process version " + result.getKey() + ": " + e.getCause().getMessage());
+                        System.out.println();
+                    } catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            return;
+        }
+
+        String version = (String) options.valueOf("version");
+        String dir = dirPattern.replaceAll("\\{rev}", version);
+
+        SpigotMappingsDownloader mappinger = new SpigotMappingsDownloader(new File(dir), version,
+                SpigotMappingsDownloader.BUILDDATA_REPO, mirrorDir, cacheDir);
+        run(mappinger, downloadSpigotMappings, downloadMojangMappings, generateCombined, System.out);
+    }
+
+    private static void run(SpigotMappingsDownloader mappinger, boolean downloadSpigotMappings,
+                            boolean downloadMojangMappings, boolean generateCombined, PrintStream out) {
+        String version = mappinger.getRev();
         if(downloadSpigotMappings) {
-            System.out.println("Downloading Spigot mappings for version " + version);
+            out.println("Downloading Spigot mappings for version " + version);
 
             if(!mappinger.isVersionValid()) {
                 throw new IllegalArgumentException("Invalid version: " + version);
@@ -50,15 +136,15 @@ public class Main {
 
             for (MappingFile file : mappinger.downloadMappings(false)) {
                 if (!file.getFile().exists()) continue;
-                System.out.println(file.getFileType());
-                System.out.println(file.getType());
-                System.out.println(file.getFile().getName());
-                System.out.println();
+                out.println(file.getFileType());
+                out.println(file.getType());
+                out.println(file.getFile().getName());
+                out.println();
             }
         }
 
         if(downloadMojangMappings) {
-            System.out.println("Downloading Mojang mappings for version " + version);
+            out.println("Downloading Mojang mappings for version " + version);
 
             if(!mappinger.hasMojangMappings()) {
                 throw new IllegalArgumentException("Mojang mappings are not available for version: " + version);
@@ -66,26 +152,26 @@ public class Main {
 
             MappingFile mojmaps = mappinger.downloadMojangMappings(false);
             if(mojmaps != null) {
-                System.out.println(mojmaps.getFileType());
-                System.out.println(mojmaps.getType());
-                System.out.println(mojmaps.getFile().getName());
+                out.println(mojmaps.getFileType());
+                out.println(mojmaps.getType());
+                out.println(mojmaps.getFile().getName());
             } else {
-                System.out.println("Mojmaps is null");
+                out.println("Mojmaps is null");
             }
         }
-        System.out.println();
+        out.println();
 
         if(generateCombined) {
-            System.out.println("Generating combined mappings for version " + version);
+            out.println("Generating combined mappings for version " + version);
             MappingFile combined = mappinger.generateCombinedMappings(false);
             if(combined != null) {
-                System.out.println(combined.getFileType());
-                System.out.println(combined.getType());
-                System.out.println(combined.getFile().getName());
+                out.println(combined.getFileType());
+                out.println(combined.getType());
+                out.println(combined.getFile().getName());
             } else {
-                System.out.println("Combined is null");
+                out.println("Combined is null");
             }
         }
-        System.out.println();
+        out.println();
     }
 }
@@ -0,0 +1,142 @@
+package io.github.spigotcvn.smdownloader;
+
+import io.github.spigotcvn.smdownloader.mappings.MappingFile;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resolves mappings for many versions at once on a bounded thread pool.
+ * Every version gets its own {@link SpigotMappingsDownloader}, all of them share the same builddata mirror.
+ */
+public class MappingsBatch implements AutoCloseable {
+    private final String dirPattern;
+    private final String repo;
+    private final File mirrorDir;
+    private final File cacheDir;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new MappingsBatch that uses ./builddata-{rev} for every version.
+     * @param threads The maximum amount of versions that are resolved at the same time.
+     */
+    public MappingsBatch(int threads) {
+        this("builddata-{rev}", SpigotMappingsDownloader.BUILDDATA_REPO, null, threads);
+    }
+
+    /**
+     * Creates a new MappingsBatch.
+     * @param dirPattern The builddata directory for each version, {rev} is replaced with the version.
+     * @param repo The URL of the builddata git repository.
+     * @param mirrorDir The directory of the shared bare builddata mirror, or null for the default.
+     * @param threads The maximum amount of versions that are resolved at the same time.
+     */
+    public MappingsBatch(String dirPattern, String repo, File mirrorDir, int threads) {
+        this(dirPattern, repo, mirrorDir, null, threads);
+    }
+
+    /**
+     * Creates a new MappingsBatch.
+     * @param dirPattern The builddata directory for each version, {rev} is replaced with the version.
+     * @param repo The URL of the builddata git repository.
+     * @param mirrorDir The directory of the shared bare builddata mirror, or null for the default.
+     * @param cacheDir The directory of the shared download cache, or null for the default.
+     * @param threads The maximum amount of versions that are resolved at the same time.
+     */
+    public MappingsBatch(String dirPattern, String repo, File mirrorDir, File cacheDir, int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+        }
+        this.dirPattern = dirPattern;
+        this.repo = repo;
+        this.mirrorDir = mirrorDir;
+        this.cacheDir = cacheDir;
+        this.executor = Executors.newFixedThreadPool(threads, new BatchThreadFactory());
+    }
+
+    /**
+     * Runs a task for every version on the thread pool.
+     * The downloader passed to the task is closed once the task is done.
+     * @param revs The versions to run the task for.
+     * @param task The task to run, it gets the downloader for the version.
+     * @return A future for every version, in the order the versions were given in.
+     * @param <T> The result type of the task.
+     */
+    public <T> Map<String, CompletableFuture<T>> submit(List<String> revs, Function<SpigotMappingsDownloader, T> task) {
+        Map<String, CompletableFuture<T>> results = new LinkedHashMap<>();
+        for(String rev : revs) {
+            if(results.containsKey(rev)) continue;
+
+            results.put(rev, CompletableFuture.supplyAsync(() -> {
+                try(SpigotMappingsDownloader downloader = createDownloader(rev)) {
+                    return task.apply(downloader);
+                }
+            }, executor));
+        }
+        return results;
+    }
+
+    /**
+     * Downloads the spigot mappings of every version.
+     * @param revs The versions to download the mappings for.
+     * @return A future for every version, see {@link SpigotMappingsDownloader#downloadMappings(boolean)}.
+     */
+    public Map<String, CompletableFuture<List<MappingFile>>> downloadMappings(List<String> revs) {
+        return submit(revs, downloader -> downloader.downloadMappings(false));
+    }
+
+    /**
+     * Downloads the mojang mappings of every version.
+     * @param revs The versions to download the mappings for.
+     * @return A future for every version, see {@link SpigotMappingsDownloader#downloadMojangMappings(boolean)}.
+     */
+    public Map<String, CompletableFuture<MappingFile>> downloadMojangMappings(List<String> revs) {
+        return submit(revs, downloader -> downloader.downloadMojangMappings(false));
+    }
+
+    /**
+     * Generates the combined mappings of every version.
+     * @param revs The versions to generate the mappings for.
+     * @return A future for every version, see {@link SpigotMappingsDownloader#generateCombinedMappings(boolean)}.
+     */
+    public Map<String, CompletableFuture<MappingFile>> generateCombinedMappings(List<String> revs) {
+        return submit(revs, downloader -> downloader.generateCombinedMappings(false));
+    }
+
+    /**
+     * Creates the downloader for a single version of this batch.
+     * @param rev The version to create the downloader for.
+     * @return The downloader.
+     */
+    public SpigotMappingsDownloader createDownloader(String rev) {
+        File buildDataDir = new File(dirPattern.replace("{rev}", rev));
+        return new SpigotMappingsDownloader(buildDataDir, rev, repo, mirrorDir, cacheDir);
+    }
+
+    /**
+     * Stops accepting new versions, versions that were already submitted still finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mappings-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
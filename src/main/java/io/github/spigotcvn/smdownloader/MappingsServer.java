@@ -0,0 +1,346 @@
+package io.github.spigotcvn.smdownloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.spigotcvn.smdownloader.json.VersionData;
+import io.github.spigotcvn.smdownloader.mappings.BinaryMappings;
+import io.github.spigotcvn.smdownloader.mappings.MappingFile;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Answers mapping lookups over HTTP, from an in-memory cache of the versions that were used most recently.
+ * The first request for a version generates its mappings like {@link SpigotMappingsDownloader} does,
+ * later requests are answered from memory until the version is evicted.
+ * At most maxVersions versions are kept, the least recently used one is evicted when another one is loaded.
+ * <p>
+ * Every version keeps its binary mappings for lookups and its combined mappings for downloads.
+ * The server only listens on the loopback address and answers GET requests:
+ * <pre>
+ * /{rev}/class?name=&amp;from=&amp;to=                   the mapped class name
+ * /{rev}/field?owner=&amp;name=[&amp;desc=]&amp;from=&amp;to=       the mapped field name, 404 if unknown
+ * /{rev}/method?owner=&amp;name=&amp;desc=&amp;from=&amp;to=       the mapped method name, 404 if unknown
+ * /{rev}/combined.csrg                              the combined spigot mappings
+ * /versions                                         the cached versions, least recently used first
+ * </pre>
+ * Namespaces are obf, spigot or mojang, names are internal names separated by '/'.
+ * Versions that do not exist are answered with 404, versions that could not be loaded with 500.
+ */
+public class MappingsServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_VERSIONS = 8;
+    // versions end up in directory names and URLs, so anything that could escape them is rejected
+    private static final Pattern VERSION_PATTERN = Pattern.compile("[0-9A-Za-z][0-9A-Za-z._-]*");
+
+    private final String dirPattern;
+    private final String repo;
+    private final File mirrorDir;
+    private final File cacheDir;
+    private final Map<String, LoadedVersion> versions;
+    private final SingleFlight loads = new SingleFlight();
+    private final ExecutorService executor;
+    private final HttpServer server;
+
+    /**
+     * Creates a new MappingsServer and starts listening.
+     * @param port The port to listen on, 0 to pick a free one.
+     * @param dirPattern The builddata directory for each version, {rev} is replaced with the version.
+     * @param repo The URL of the builddata git repository.
+     * @param mirrorDir The directory of the shared bare builddata mirror, or null for the default.
+     * @param cacheDir The directory of the shared download cache, or null for the default.
+     * @param maxVersions How many versions are kept in memory at most.
+     * @param threads How many requests are handled at the same time.
+     * @throws IOException If the server could not be bound to the port.
+     */
+    public MappingsServer(int port, String dirPattern, String repo, File mirrorDir, File cacheDir,
+                          int maxVersions, int threads) throws IOException {
+        if(maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions must be at least 1, got " + maxVersions);
+        }
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+        }
+        this.dirPattern = dirPattern;
+        this.repo = repo;
+        this.mirrorDir = mirrorDir;
+        this.cacheDir = cacheDir;
+        this.versions = new LinkedHashMap<String, LoadedVersion>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LoadedVersion> eldest) {
+                return size() > maxVersions;
+            }
+        };
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mappings-server-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the mappings of a version from the cache, loading them if they are not cached.
+     * @param rev The version.
+     * @return The loaded mappings.
+     * @throws UnknownVersionException If the version does not exist.
+     * @throws IOException If the mappings could not be generated or read.
+     */
+    public LoadedVersion getVersion(String rev) throws IOException {
+        if(!VERSION_PATTERN.matcher(rev).matches()) {
+            throw new UnknownVersionException(rev);
+        }
+        synchronized(versions) {
+            LoadedVersion version = versions.get(rev);
+            if(version != null) {
+                return version;
+            }
+        }
+
+        // concurrent requests for a version that is not cached yet share one load
+        return loads.run(rev, () -> {
+            synchronized(versions) {
+                LoadedVersion cached = versions.get(rev);
+                if(cached != null) {
+                    return cached;
+                }
+            }
+            LoadedVersion loaded = load(rev);
+            synchronized(versions) {
+                versions.put(rev, loaded);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * @return The cached versions, from the least to the most recently used.
+     */
+    public List<String> getCachedVersions() {
+        synchronized(versions) {
+            return new ArrayList<>(versions.keySet());
+        }
+    }
+
+    private LoadedVersion load(String rev) throws IOException {
+        File buildDataDir = new File(dirPattern.replace("{rev}", rev));
+        SpigotMappingsDownloader downloader = new SpigotMappingsDownloader(buildDataDir, rev, repo, mirrorDir, cacheDir);
+        VersionData versionData;
+        try {
+            versionData = downloader.getVersionData();
+        } catch(IllegalArgumentException e) {
+            // only thrown if spigot does not know the version
+            throw new UnknownVersionException(rev);
+        }
+        if(versionData == null) {
+            throw new IOException("Unable to download the version data of " + rev);
+        }
+
+        // one pass over the mojang mappings for both files
+        List<MappingFile> mappings = downloader.generateCombinedAndBinaryMappings(false);
+        if(mappings == null) {
+            throw new IOException("Unable to generate the mappings of version " + rev);
+        }
+        MappingFile combined = mappings.get(0);
+        MappingFile binary = mappings.get(1);
+        // not mapped, the files could not be regenerated or deleted on windows while the version is cached
+        return new LoadedVersion(rev, BinaryMappings.read(binary.getFile()), Files.readAllBytes(combined.getFile().toPath()));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if(!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "Only GET requests are supported");
+                return;
+            }
+
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            if(path.length == 1 && path[0].equals("versions")) {
+                respond(exchange, 200, String.join("\n", getCachedVersions()));
+                return;
+            }
+            if(path.length != 2) {
+                respond(exchange, 404, "Unknown path");
+                return;
+            }
+
+            LoadedVersion version;
+            try {
+                version = getVersion(path[0]);
+            } catch(UnknownVersionException e) {
+                respond(exchange, 404, e.getMessage());
+                return;
+            } catch(IllegalArgumentException e) {
+                // anything else that goes wrong while loading is not the fault of the request
+                e.printStackTrace();
+                respond(exchange, 500, "Internal error: " + e);
+                return;
+            }
+            if(path[1].equals("combined.csrg")) {
+                respond(exchange, 200, version.getCombined());
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            BinaryMappings mappings = version.getMappings();
+            Namespace from = namespace(query, "from");
+            Namespace to = namespace(query, "to");
+            String result;
+            switch(path[1]) {
+                case "class":
+                    result = mappings.mapClass(require(query, "name"), from, to);
+                    break;
+                case "field":
+                    result = mappings.mapField(require(query, "owner"), require(query, "name"), query.get("desc"), from, to);
+                    break;
+                case "method":
+                    result = mappings.mapMethod(require(query, "owner"), require(query, "name"), require(query, "desc"), from, to);
+                    break;
+                default:
+                    respond(exchange, 404, "Unknown path");
+                    return;
+            }
+
+            if(result == null) {
+                respond(exchange, 404, "Unknown " + path[1]);
+            } else {
+                respond(exchange, 200, result);
+            }
+        } catch(IllegalArgumentException e) {
+            respond(exchange, 400, String.valueOf(e.getMessage()));
+        } catch(IOException | RuntimeException e) {
+            e.printStackTrace();
+            respond(exchange, 500, "Internal error: " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Namespace namespace(Map<String, String> query, String key) {
+        String name = require(query, key);
+        try {
+            return Namespace.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown namespace: " + name);
+        }
+    }
+
+    private static String require(Map<String, String> query, String key) {
+        String value = query.get(key);
+        if(value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing query parameter: " + key);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<>();
+        if(rawQuery == null) {
+            return query;
+        }
+        for(String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if(equals == -1) {
+                query.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        respond(exchange, code, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        // a length of 0 would mean chunked, -1 means there is no body
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if(body.length > 0) {
+            try(OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * Stops the server, requests that are being handled are given a second to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Thrown if a version does not exist, or is not even a valid version name.
+     */
+    public static class UnknownVersionException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public UnknownVersionException(String rev) {
+            super("Unknown version: " + rev);
+        }
+    }
+
+    /**
+     * The mappings of a version that are kept in memory.
+     */
+    public static class LoadedVersion {
+        private final String rev;
+        private final BinaryMappings mappings;
+        private final byte[] combined;
+
+        LoadedVersion(String rev, BinaryMappings mappings, byte[] combined) {
+            this.rev = rev;
+            this.mappings = mappings;
+            this.combined = combined;
+        }
+
+        public String getRev() {
+            return rev;
+        }
+
+        public BinaryMappings getMappings() {
+            return mappings;
+        }
+
+        /**
+         * @return The contents of the combined mappings file, they must not be modified.
+         */
+        public byte[] getCombined() {
+            return combined;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.spigotcvn.smdownloader;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent calls for the same key into one.
+ * The first caller of a key runs the task, callers that arrive while it is running wait for it and get the same result,
+ * or the same exception. Once the task is done the key is free again, so results are never cached.
+ */
+class SingleFlight {
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Runs a task, or waits for the task that is already running for the key.
+     * @param key The key identifying the work.
+     * @param task The work to do if no other caller is doing it already.
+     * @return The result of the task.
+     * @throws E If the task threw it, in this or in the other caller.
+     */
+    @SuppressWarnings("unchecked")
+    <T, E extends Exception> T run(String key, Task<T, E> task) throws E {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flights.putIfAbsent(key, flight);
+        if(running != null) {
+            try {
+                return (T) running.join();
+            } catch(CompletionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if(cause instanceof Error) throw (Error) cause;
+                // only the task of the same key can have thrown it, so it is an E
+                throw (E) cause;
+            }
+        }
+
+        try {
+            T result = task.run();
+            flight.complete(result);
+            return result;
+        } catch(Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    interface Task<T, E extends Exception> {
+        T run() throws E;
+    }
+}
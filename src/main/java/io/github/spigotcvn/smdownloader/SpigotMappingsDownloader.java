@@ -2,32 +2,59 @@ package io.github.spigotcvn.smdownloader;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.github.spigotcvn.smdownloader.git.BuildDataMirror;
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+import io.github.spigotcvn.smdownloader.io.DirectoryLock;
+import io.github.spigotcvn.smdownloader.io.DownloadCache;
+import io.github.spigotcvn.smdownloader.io.GenerationManifest;
 import io.github.spigotcvn.smdownloader.io.HTTPNotOkException;
 import io.github.spigotcvn.smdownloader.io.IOUtils;
 import io.github.spigotcvn.smdownloader.json.BuildDataInfo;
 import io.github.spigotcvn.smdownloader.json.VersionData;
+import io.github.spigotcvn.smdownloader.mappings.BinaryMappingsWriter;
+import io.github.spigotcvn.smdownloader.mappings.CsrgWriter;
 import io.github.spigotcvn.smdownloader.mappings.MapUtil;
 import io.github.spigotcvn.smdownloader.mappings.MappingFile;
-import org.eclipse.jgit.api.Git;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree;
+import io.github.spigotcvn.smdownloader.mappings.TinyWriter;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.transport.RefSpec;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads and generates the mappings of a single version into its builddata directory.
+ * Downloaders can be used from several threads and processes at once, even for the same version.
+ * Operations on a builddata directory hold a {@link DirectoryLock} on it, so they never interleave,
+ * and concurrent calls for the same version and artifact are coalesced into one, the other callers wait for its result.
+ */
 public class SpigotMappingsDownloader implements AutoCloseable {
     private static final String VERSIONS_URL = "https://hub.spigotmc.org/versions/%s.json";
-    private static final String BUILDDATA_REPO = "https://hub.spigotmc.org/stash/scm/spigot/builddata.git";
+    public static final String BUILDDATA_REPO = "https://hub.spigotmc.org/stash/scm/spigot/builddata.git";
+    // version data can be updated to newer builds, so it is revalidated after this many milliseconds
+    private static final long VERSION_DATA_MAX_AGE = 10 * 60 * 1000;
+    private static final Pattern MOJANG_OBJECT_PATTERN = Pattern.compile("/objects/([0-9a-fA-F]{40})/");
+    // recorded for every generated file, bump it whenever the generated output changes so old files are regenerated
+    private static final int GENERATOR_VERSION = 1;
+    // shared by all downloaders, so downloaders of the same version coalesce their work
+    private static final SingleFlight FLIGHTS = new SingleFlight();
 
     private File buildDataDir;
     private String rev;
     private VersionData versionInfo;
-    private Git gitClient;
-    private String repo;
+    private BuildDataMirror mirror;
+    private DownloadCache cache;
     private final Gson gson = new GsonBuilder()
             .setPrettyPrinting()
             .create();
@@ -61,28 +88,62 @@ public class SpigotMappingsDownloader implements AutoCloseable {
      * @param repo The URL of the builddata git repository.
      */
     public SpigotMappingsDownloader(File buildDataDir, String rev, String repo) {
+        this(buildDataDir, rev, repo, null);
+    }
+
+    /**
+     * Creates a new SpigotMappingsDownloader object.
+     * @param buildDataDir The directory to check the builddata revision out to.
+     *                     This is also the directory inside which all operations will be performed.
+     *                     Defaults to ./builddata-{rev}
+     * @param rev The version to download mappings for.
+     * @param repo The URL of the builddata git repository.
+     * @param mirrorDir The directory of the bare builddata mirror shared between all versions.
+     *                  Defaults to builddata.git next to the buildDataDir.
+     */
+    public SpigotMappingsDownloader(File buildDataDir, String rev, String repo, File mirrorDir) {
+        this(buildDataDir, rev, repo, mirrorDir, null);
+    }
+
+    /**
+     * Creates a new SpigotMappingsDownloader object.
+     * @param buildDataDir The directory to check the builddata revision out to.
+     *                     This is also the directory inside which all operations will be performed.
+     *                     Defaults to ./builddata-{rev}
+     * @param rev The version to download mappings for.
+     * @param repo The URL of the builddata git repository.
+     * @param mirrorDir The directory of the bare builddata mirror shared between all versions.
+     *                  Defaults to builddata.git next to the buildDataDir.
+     * @param cacheDir The directory of the download cache shared between all versions.
+     *                 Defaults to download-cache next to the buildDataDir.
+     */
+    public SpigotMappingsDownloader(File buildDataDir, String rev, String repo, File mirrorDir, File cacheDir) {
         this.buildDataDir = buildDataDir;
         if(buildDataDir == null) {
             this.buildDataDir = new File("builddata-" + rev);
         }
+        File parentDir = this.buildDataDir.getAbsoluteFile().getParentFile();
+        if(mirrorDir == null) {
+            mirrorDir = new File(parentDir, "builddata.git");
+        }
+        if(cacheDir == null) {
+            cacheDir = new File(parentDir, "download-cache");
+        }
         this.rev = rev;
         this.versionInfo = null;
-        this.gitClient = null;
-        this.repo = repo;
+        this.mirror = BuildDataMirror.get(mirrorDir, repo);
+        this.cache = new DownloadCache(cacheDir);
     }
 
     /**
      * Checks if the specified version is valid.
+     * This fetches the version data right away, so no separate request is needed for {@link #getVersionData()}.
      * @return True if the version is valid, false otherwise.
      */
     public boolean isVersionValid() {
         try {
-            URL downloadUrl = new URL(String.format(VERSIONS_URL, rev));
-            HttpURLConnection connection = (HttpURLConnection) downloadUrl.openConnection();
-            connection.setRequestMethod("GET");
-
-            return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
-        } catch(IOException e) {
+            return getVersionData() != null;
+        } catch(IllegalArgumentException e) {
             return false;
         }
     }
@@ -97,13 +158,8 @@ public class SpigotMappingsDownloader implements AutoCloseable {
             return false;
         }
 
-        File infoFile = new File(buildDataDir, "info.json");
-        if(!infoFile.exists()) {
-            return false;
-        }
-
-        BuildDataInfo buildDataInfo = gson.fromJson(IOUtils.readFromFile(infoFile), BuildDataInfo.class);
-        return buildDataInfo.getMappingsUrl() != null;
+        BuildDataInfo buildDataInfo = readBuildDataInfo(versionData);
+        return buildDataInfo != null && buildDataInfo.getMappingsUrl() != null;
     }
 
     /**
@@ -121,7 +177,7 @@ public class SpigotMappingsDownloader implements AutoCloseable {
             }
 
             ByteArrayOutputStream downloadedInfoStream = new ByteArrayOutputStream();
-            try(InputStream inputStream = IOUtils.getDownloadinputStream(downloadUrl)) {
+            try(InputStream inputStream = cache.download(downloadUrl, VERSION_DATA_MAX_AGE)) {
                 IOUtils.downloadFile(inputStream, downloadedInfoStream);
             } catch(IOException e) {
                 if(e instanceof HTTPNotOkException) {
@@ -140,12 +196,16 @@ public class SpigotMappingsDownloader implements AutoCloseable {
 
     /**
      * Downloads spigot mappings for the specified version.
-     * That is achieved by cloning the builddata git repository and checking out the specified version.
+     * That is achieved by checking out the specified version from the shared builddata mirror.
      * @param deleteIfExists If true, it will delete the existing builddata directory
      *                       and clone the repository again.
      * @return A list of mapping files for the specified version.
      */
     public List<MappingFile> downloadMappings(boolean deleteIfExists) {
+        return copy(exclusive(artifact("spigot-mappings", deleteIfExists), () -> downloadMappingsLocked(deleteIfExists)));
+    }
+
+    private List<MappingFile> downloadMappingsLocked(boolean deleteIfExists) {
         VersionData versionData = getVersionData();
         if(versionData == null) {
             return null;
@@ -159,11 +219,12 @@ public class SpigotMappingsDownloader implements AutoCloseable {
             }
         }
 
-        if(!buildDataDir.exists()) {
-            pullBuildDataGit(versionData.getRefs().getBuildData());
-        }
-
+        // the version data can point at a newer builddata revision than the one checked out by an earlier run
+        String revHash = versionData.getRefs().getBuildData();
         File infoFile = new File(buildDataDir, "info.json");
+        if(!infoFile.exists() || !revHash.equals(GenerationManifest.load(buildDataDir).getCheckout())) {
+            pullBuildDataGit(revHash);
+        }
         if(!infoFile.exists()) {
             return null;
         }
@@ -187,43 +248,116 @@ public class SpigotMappingsDownloader implements AutoCloseable {
         return mappingFiles;
     }
 
+    /**
+     * Reads spigot mappings for the specified version without checking anything out.
+     * Only info.json and the referenced files under mappings/ are read,
+     * straight from the objects of the builddata mirror, and held in memory.
+     * @return A list of in-memory mapping files for the specified version.
+     */
+    public List<MappingFile> readMappings() {
+        VersionData versionData = getVersionData();
+        if(versionData == null) {
+            return null;
+        }
+
+        BuildDataInfo buildDataInfo = readBuildDataInfo(versionData);
+        if(buildDataInfo == null) {
+            return null;
+        }
+
+        List<MappingFile> mappingFiles = new ArrayList<>();
+        addMappingFromObjects(mappingFiles, versionData, MappingFile.MappingType.CLASS, buildDataInfo.getClassMappings());
+        addMappingFromObjects(mappingFiles, versionData, MappingFile.MappingType.MEMBERS, buildDataInfo.getMemberMappings());
+        addMappingFromObjects(mappingFiles, versionData, MappingFile.MappingType.PACKAGE, buildDataInfo.getPackageMappings());
+        return mappingFiles;
+    }
+
+    private void addMappingFromObjects(List<MappingFile> mappingFiles, VersionData versionData,
+                                       MappingFile.MappingType type, String name) {
+        if(name == null) return;
+
+        byte[] contents = readBuildDataFile(versionData, "mappings/" + name);
+        if(contents != null) {
+            mappingFiles.add(new MappingFile(type, name, contents));
+        }
+    }
+
+    /**
+     * Reads the info.json of the builddata revision for this version.
+     * The checked out file is used if there is one, otherwise it is read from the builddata mirror.
+     * @param versionData The version data pointing at the builddata revision.
+     * @return The parsed info.json, or null if it could not be read.
+     */
+    private BuildDataInfo readBuildDataInfo(VersionData versionData) {
+        File infoFile = new File(buildDataDir, "info.json");
+        String infoData;
+        if(infoFile.exists()) {
+            infoData = IOUtils.readFromFile(infoFile);
+        } else {
+            byte[] contents = readBuildDataFile(versionData, "info.json");
+            if(contents == null) {
+                return null;
+            }
+            infoData = new String(contents, StandardCharsets.UTF_8);
+        }
+        return gson.fromJson(infoData, BuildDataInfo.class);
+    }
+
+    private byte[] readBuildDataFile(VersionData versionData, String path) {
+        String revHash = versionData.getRefs().getBuildData();
+        try {
+            mirror.ensureCommit(revHash);
+            return mirror.readFile(revHash, path);
+        } catch(IOException | GitAPIException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Downloads mojang mappings for the specified version.
-     * That is achieved by cloning the builddata git repository and checking out the specified version.
-     * The info.json file in the builddata git repo has the needed mappings url for that version.
+     * The info.json file in the builddata git repo has the needed mappings url for that version,
+     * it is read from the shared builddata mirror without checking the version out.
      * @param deleteRepoIfExists If true, it will delete the existing builddata directory
      *                           and clone the repository again.
      * @return The downloaded mojang mapping file.
      */
     public MappingFile downloadMojangMappings(boolean deleteRepoIfExists) {
+        return exclusive(artifact("mojang-mappings", deleteRepoIfExists), () -> downloadMojangMappingsLocked(deleteRepoIfExists));
+    }
+
+    private MappingFile downloadMojangMappingsLocked(boolean deleteRepoIfExists) {
         VersionData versionData = getVersionData();
         if(versionData == null) {
             return null;
         }
 
-        File infoFile = new File(buildDataDir, "info.json");
-        if(!infoFile.exists()) {
-            return null;
-        }
-
         if(deleteRepoIfExists) {
             if (buildDataDir.exists() && buildDataDir.isDirectory()) {
                 IOUtils.deleteDirectory(buildDataDir);
             }
         }
 
-        if(!buildDataDir.exists()) {
-            pullBuildDataGit(versionData.getRefs().getBuildData());
+        BuildDataInfo buildDataInfo = readBuildDataInfo(versionData);
+        if(buildDataInfo == null) {
+            return null;
         }
-
-        BuildDataInfo buildDataInfo = gson.fromJson(IOUtils.readFromFile(infoFile), BuildDataInfo.class);
         if(buildDataInfo.getMappingsUrl() == null) throw new IllegalArgumentException("No mojang mappings available for version " + rev);
 
         File mojmaps = new File(buildDataDir, "mojmaps.txt");
+        buildDataDir.mkdirs();
         URL url;
         try {
             url = new URL(buildDataInfo.getMappingsUrl());
-            IOUtils.downloadFile(url.openStream(), mojmaps);
+            String sha1 = getMojangObjectHash(url);
+            // a copy that still has the published hash is used as is, without looking at the cache or the network
+            if(sha1 == null || !AtomicFileOutputStream.isIntact(mojmaps, sha1)) {
+                try(InputStream downloaded = sha1 == null ? cache.download(url) : cache.download(url, sha1);
+                    AtomicFileOutputStream output = new AtomicFileOutputStream(mojmaps)) {
+                    IOUtils.copy(downloaded, output);
+                    output.commit(sha1);
+                }
+            }
 
             return new MappingFile(
                     MappingFile.MappingFileType.PROGUARD,
@@ -237,6 +371,17 @@ public class SpigotMappingsDownloader implements AutoCloseable {
         return null;
     }
 
+    /**
+     * Gets the SHA-1 Mojang publishes for a file, which is part of the URL of files on their piston-data server,
+     * like https://piston-data.mojang.com/v1/objects/&lt;sha1&gt;/server.txt.
+     * @param url The URL of the file.
+     * @return The SHA-1 of the file as lowercase hex, or null if the URL does not contain it.
+     */
+    static String getMojangObjectHash(URL url) {
+        Matcher matcher = MOJANG_OBJECT_PATTERN.matcher(url.getPath());
+        return matcher.find() ? matcher.group(1).toLowerCase(Locale.ROOT) : null;
+    }
+
     /**
      * Generates combined mappings for the specified version.
      * Combined mappings are mappings that contain both class and member mappings.
@@ -245,13 +390,37 @@ public class SpigotMappingsDownloader implements AutoCloseable {
      * @return The generated combined mapping file.
      */
     public MappingFile generateCombinedMappings(boolean deleteRepoIfExists) {
+        List<MappingFile> mappings = generateAllMappings(deleteRepoIfExists);
+        if(mappings == null) {
+            return null;
+        }
+
+        return mappings.stream()
+                .filter(m -> m.getType() == MappingFile.MappingType.COMBINED)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Generates member, field and combined mappings for the specified version in one go.
+     * The spigot and mojang mappings are only downloaded once and the mojang mappings are only parsed once,
+     * instead of once per generated file like when calling the separate generate methods.
+     * Member mappings that are shipped with the spigot mappings are used as they are.
+     * Files that were generated by an earlier run from the same builddata revision, mojang mappings
+     * and generator version are reused, see {@link GenerationManifest}.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @return The member mappings, the field mappings if mojang mappings are available, and the combined mappings.
+     */
+    public List<MappingFile> generateAllMappings(boolean deleteRepoIfExists) {
+        return copy(exclusive(artifact("csrg", deleteRepoIfExists), () -> generateAllMappingsLocked(deleteRepoIfExists)));
+    }
+
+    private List<MappingFile> generateAllMappingsLocked(boolean deleteRepoIfExists) {
         VersionData versionData = getVersionData();
         if(versionData == null) {
             return null;
         }
 
-        MapUtil mapUtil = new MapUtil();
-
         List<MappingFile> mappings = downloadMappings(deleteRepoIfExists);
         if(mappings == null) {
             return null;
@@ -264,41 +433,300 @@ public class SpigotMappingsDownloader implements AutoCloseable {
         if(classMappings == null) {
             return null;
         }
+
+        MappingFile memberMappings = mappings.stream()
+                .filter(m -> m.getType() == MappingFile.MappingType.MEMBERS)
+                .findFirst()
+                .orElse(null);
+        MappingFile mojmaps = null;
+        if(hasMojangMappings()) {
+            mojmaps = downloadMojangMappings(false);
+            if(mojmaps == null) {
+                return null;
+            }
+        }
+        if(memberMappings == null && mojmaps == null) {
+            return null;
+        }
+
+        File members = new File(buildDataDir, "spigot-" + rev + "-members.csrg");
+        File fields = new File(buildDataDir, "spigot-" + rev + "-fields.csrg");
+        File combined = new File(buildDataDir, "spigot-" + rev + "-combined.csrg");
+        List<MappingFile> generated = new ArrayList<>();
+        GenerationManifest manifest = GenerationManifest.load(buildDataDir);
         try {
-            mapUtil.loadBuk(classMappings.getFile());
+            if(memberMappings == null) {
+                Map<String, String> inputs = generationInputs(mojmaps);
+                if(!manifest.isUpToDate(inputs, members, fields, combined)) {
+                    manifest.invalidate(members, fields, combined);
+                    loadClassMappings(classMappings).makeMemberFieldAndCombinedMaps(mojmaps.getFile(), members, fields, combined);
+                    manifest.record(inputs, members, fields, combined);
+                }
+
+                generated.add(new MappingFile(MappingFile.MappingType.MEMBERS, members));
+            } else {
+                // the combined mappings only depend on the shipped mappings, not on the mojang mappings
+                Map<String, String> fieldInputs = mojmaps == null ? null : generationInputs(mojmaps);
+                Map<String, String> combinedInputs = generationInputs(null);
+                boolean fieldsUpToDate = fieldInputs == null || manifest.isUpToDate(fieldInputs, fields);
+                boolean combinedUpToDate = manifest.isUpToDate(combinedInputs, combined);
+                if(!fieldsUpToDate || !combinedUpToDate) {
+                    MapUtil mapUtil = loadClassMappings(classMappings);
+                    if(!fieldsUpToDate) {
+                        manifest.invalidate(fields);
+                        mapUtil.makeFieldMaps(mojmaps.getFile(), fields, false);
+                        manifest.record(fieldInputs, fields);
+                    }
+                    if(!combinedUpToDate) {
+                        manifest.invalidate(combined);
+                        mapUtil.makeCombinedMaps(combined, memberMappings);
+                        manifest.record(combinedInputs, combined);
+                    }
+                }
+
+                generated.add(memberMappings);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
 
+        if(mojmaps != null) {
+            generated.add(new MappingFile(MappingFile.MappingType.FIELDS, fields));
+        }
+        generated.add(new MappingFile(MappingFile.MappingType.COMBINED, combined));
+        return generated;
+    }
+
+    /**
+     * Generates the mappings of the specified version as an in-memory tree, without writing any mapping files.
+     * Members are read from the mojang mappings if they are available,
+     * otherwise from the member mappings that are shipped with the spigot mappings.
+     * Use {@link CsrgWriter} to write the tree to files.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @return The mapping tree, or null if the mappings could not be downloaded.
+     */
+    public MappingTree generateMappingTree(boolean deleteRepoIfExists) {
+        return exclusive(artifact("tree", deleteRepoIfExists), () -> generateMappingTreeLocked(deleteRepoIfExists));
+    }
+
+    private MappingTree generateMappingTreeLocked(boolean deleteRepoIfExists) {
+        VersionData versionData = getVersionData();
+        if(versionData == null) {
+            return null;
+        }
+
+        List<MappingFile> mappings = downloadMappings(deleteRepoIfExists);
+        if(mappings == null) {
+            return null;
+        }
+
+        MappingFile mojmaps = null;
+        if(hasMojangMappings()) {
+            mojmaps = downloadMojangMappings(false);
+            if(mojmaps == null) {
+                return null;
+            }
+        }
+        try {
+            return generateMappingTree(mappings, mojmaps);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Generates the mapping tree from mappings that were already downloaded.
+     * @param mappings The spigot mappings.
+     * @param mojmaps The mojang mappings, or null if the version has none.
+     * @return The mapping tree, or null if the class mappings or the members are missing.
+     * @throws IOException If the mappings could not be read.
+     */
+    private MappingTree generateMappingTree(List<MappingFile> mappings, MappingFile mojmaps) throws IOException {
+        MappingFile classMappings = mappings.stream()
+                .filter(m -> m.getType() == MappingFile.MappingType.CLASS)
+                .findFirst()
+                .orElse(null);
         MappingFile memberMappings = mappings.stream()
                 .filter(m -> m.getType() == MappingFile.MappingType.MEMBERS)
                 .findFirst()
                 .orElse(null);
-        if(memberMappings == null && hasMojangMappings()) {
-            memberMappings = generateMemberMappings(mapUtil, deleteRepoIfExists);
+        if(classMappings == null) {
+            return null;
+        }
+
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(classMappings);
+        if(mojmaps != null) {
+            return mapUtil.makeMappingTree(mojmaps.getFile());
         }
         if(memberMappings == null) {
             return null;
         }
+        return mapUtil.makeMappingTree(memberMappings);
+    }
+
+    /**
+     * Generates Tiny v2 mappings with the obf, spigot and mojang names of the specified version.
+     * Only versions with mojang mappings are written as tiny, shipped member mappings have neither mojang names nor field types.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @return The generated tiny mapping file, or null if the version has no mojang mappings.
+     */
+    public MappingFile generateTinyMappings(boolean deleteRepoIfExists) {
+        if(!hasMojangMappings()) {
+            return null;
+        }
+        File tiny = new File(buildDataDir, "spigot-" + rev + ".tiny");
+        return generateFromTree(tiny, deleteRepoIfExists, TinyWriter::write);
+    }
 
+    /**
+     * Generates binary mappings with the obf, spigot and mojang names of the specified version.
+     * Binary mappings can be opened with {@link MappingFile#openBinary()} for lookups without parsing them.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @return The generated binary mapping file.
+     */
+    public MappingFile generateBinaryMappings(boolean deleteRepoIfExists) {
+        File binary = new File(buildDataDir, "spigot-" + rev + ".bmap");
+        return generateFromTree(binary, deleteRepoIfExists, BinaryMappingsWriter::write);
+    }
+
+    /**
+     * Generates the combined and the binary mappings of the specified version together,
+     * the two files a {@link MappingsServer} needs.
+     * Both are written from one mapping tree, so the mojang mappings are only parsed once,
+     * instead of once for each of them like when calling {@link #generateCombinedMappings(boolean)} and {@link #generateBinaryMappings(boolean)}.
+     * The files are the same as the ones those methods generate, and are reused by them.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @return The combined mappings and the binary mappings.
+     */
+    public List<MappingFile> generateCombinedAndBinaryMappings(boolean deleteRepoIfExists) {
+        return copy(exclusive(artifact("combined+bmap", deleteRepoIfExists), () -> generateCombinedAndBinaryMappingsLocked(deleteRepoIfExists)));
+    }
+
+    private List<MappingFile> generateCombinedAndBinaryMappingsLocked(boolean deleteRepoIfExists) {
+        if(getVersionData() == null) {
+            return null;
+        }
+        List<MappingFile> mappings = downloadMappings(deleteRepoIfExists);
+        if(mappings == null) {
+            return null;
+        }
+
+        MappingFile classMappings = mappings.stream()
+                .filter(m -> m.getType() == MappingFile.MappingType.CLASS)
+                .findFirst()
+                .orElse(null);
+        if(classMappings == null) {
+            return null;
+        }
+        MappingFile memberMappings = mappings.stream()
+                .filter(m -> m.getType() == MappingFile.MappingType.MEMBERS)
+                .findFirst()
+                .orElse(null);
+        MappingFile mojmaps = null;
         if(hasMojangMappings()) {
-            generateFieldMappings(mapUtil, deleteRepoIfExists);
+            mojmaps = downloadMojangMappings(false);
+            if(mojmaps == null) {
+                return null;
+            }
+        }
+        if(memberMappings == null && mojmaps == null) {
+            return null;
         }
 
-        File combinedMappings = new File(buildDataDir, "spigot-" + rev + "-combined.csrg");
+        File combined = new File(buildDataDir, "spigot-" + rev + "-combined.csrg");
+        File binary = new File(buildDataDir, "spigot-" + rev + ".bmap");
+        GenerationManifest manifest = GenerationManifest.load(buildDataDir);
+        try {
+            // recorded with the same inputs as generateAllMappings and generateBinaryMappings do
+            Map<String, String> treeInputs = generationInputs(mojmaps);
+            Map<String, String> combinedInputs = memberMappings == null ? treeInputs : generationInputs(null);
+            boolean binaryUpToDate = manifest.isUpToDate(treeInputs, binary);
+            boolean combinedUpToDate = manifest.isUpToDate(combinedInputs, combined);
+            if(!binaryUpToDate || !combinedUpToDate) {
+                MapUtil mapUtil = loadClassMappings(classMappings);
+                MappingTree tree = null;
+                // shipped member mappings are combined as they are, the tree is only needed for the binary mappings then
+                if(!binaryUpToDate || memberMappings == null) {
+                    tree = mojmaps != null ? mapUtil.makeMappingTree(mojmaps.getFile()) : mapUtil.makeMappingTree(memberMappings);
+                }
+                if(!binaryUpToDate) {
+                    manifest.invalidate(binary);
+                    BinaryMappingsWriter.write(tree, binary);
+                    manifest.record(treeInputs, binary);
+                }
+                if(!combinedUpToDate) {
+                    manifest.invalidate(combined);
+                    if(memberMappings == null) {
+                        mapUtil.makeCombinedMaps(combined, tree);
+                    } else {
+                        mapUtil.makeCombinedMaps(combined, memberMappings);
+                    }
+                    manifest.record(combinedInputs, combined);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        List<MappingFile> generated = new ArrayList<>();
+        generated.add(new MappingFile(MappingFile.MappingType.COMBINED, combined));
+        generated.add(new MappingFile(MappingFile.MappingType.COMBINED, binary));
+        return generated;
+    }
+
+    /**
+     * Writes the mapping tree of the specified version to a file,
+     * unless the file was already written from the same inputs by an earlier run.
+     * @param out The file to write.
+     * @param deleteRepoIfExists If true, it will delete the existing builddata directory
+     * @param writer Writes the tree to the file.
+     * @return The written file, or null if the tree could not be generated.
+     */
+    private MappingFile generateFromTree(File out, boolean deleteRepoIfExists, TreeWriter writer) {
+        return exclusive(artifact(out.getName(), deleteRepoIfExists), () -> generateFromTreeLocked(out, deleteRepoIfExists, writer));
+    }
+
+    private MappingFile generateFromTreeLocked(File out, boolean deleteRepoIfExists, TreeWriter writer) {
+        if(getVersionData() == null) {
+            return null;
+        }
+        List<MappingFile> mappings = downloadMappings(deleteRepoIfExists);
+        if(mappings == null) {
+            return null;
+        }
+        MappingFile mojmaps = null;
+        if(hasMojangMappings()) {
+            mojmaps = downloadMojangMappings(false);
+            if(mojmaps == null) {
+                return null;
+            }
+        }
 
         try {
-            mapUtil.makeCombinedMaps(combinedMappings, memberMappings.getFile());
+            Map<String, String> inputs = generationInputs(mojmaps);
+            GenerationManifest manifest = GenerationManifest.load(buildDataDir);
+            if(!manifest.isUpToDate(inputs, out)) {
+                MappingTree tree = generateMappingTree(mappings, mojmaps);
+                if(tree == null) {
+                    return null;
+                }
+                manifest.invalidate(out);
+                writer.write(tree, out);
+                manifest.record(inputs, out);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
+        return new MappingFile(MappingFile.MappingType.COMBINED, out);
+    }
 
-        return new MappingFile(
-                MappingFile.MappingType.COMBINED,
-                combinedMappings
-        );
+    private interface TreeWriter {
+        void write(MappingTree tree, File out) throws IOException;
     }
 
     /**
@@ -365,6 +793,10 @@ public class SpigotMappingsDownloader implements AutoCloseable {
      * @return The generated member mapping file.
      */
     public MappingFile generateMemberMappings(MapUtil mapUtil, boolean deleteRepoIfExists) {
+        return exclusive(artifact("members", deleteRepoIfExists), () -> generateMemberMappingsLocked(mapUtil, deleteRepoIfExists));
+    }
+
+    private MappingFile generateMemberMappingsLocked(MapUtil mapUtil, boolean deleteRepoIfExists) {
         VersionData versionData = getVersionData();
         if(versionData == null) {
             return null;
@@ -387,7 +819,13 @@ public class SpigotMappingsDownloader implements AutoCloseable {
         if(memberMappings == null) {
             try {
                 File members = new File(buildDataDir, "spigot-" + rev + "-members.csrg");
-                mapUtil.makeFieldMaps(mojmaps.getFile(), members, true);
+                Map<String, String> inputs = generationInputs(mojmaps);
+                GenerationManifest manifest = GenerationManifest.load(buildDataDir);
+                if(!manifest.isUpToDate(inputs, members)) {
+                    manifest.invalidate(members);
+                    mapUtil.makeFieldMaps(mojmaps.getFile(), members, true);
+                    manifest.record(inputs, members);
+                }
                 memberMappings = new MappingFile(
                         MappingFile.MappingType.MEMBERS,
                         members
@@ -411,6 +849,10 @@ public class SpigotMappingsDownloader implements AutoCloseable {
      * @return The generated field mapping file.
      */
     public MappingFile generateFieldMappings(MapUtil mapUtil, boolean deleteRepoIfExists) {
+        return exclusive(artifact("fields", deleteRepoIfExists), () -> generateFieldMappingsLocked(mapUtil, deleteRepoIfExists));
+    }
+
+    private MappingFile generateFieldMappingsLocked(MapUtil mapUtil, boolean deleteRepoIfExists) {
         VersionData versionData = getVersionData();
         if(versionData == null) {
             return null;
@@ -427,7 +869,13 @@ public class SpigotMappingsDownloader implements AutoCloseable {
 
         File fieldMappings = new File(buildDataDir, "spigot-" + rev + "-fields.csrg");
         try {
-            mapUtil.makeFieldMaps(mojmaps.getFile(), fieldMappings, false);
+            Map<String, String> inputs = generationInputs(mojmaps);
+            GenerationManifest manifest = GenerationManifest.load(buildDataDir);
+            if(!manifest.isUpToDate(inputs, fieldMappings)) {
+                manifest.invalidate(fieldMappings);
+                mapUtil.makeFieldMaps(mojmaps.getFile(), fieldMappings, false);
+                manifest.record(inputs, fieldMappings);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -440,32 +888,91 @@ public class SpigotMappingsDownloader implements AutoCloseable {
     }
 
     /**
-     * Clones the builddata git repository and checks out the specified revision hash.
-     * The repository is cloned to the directory specified in the constructor.
-     * @param revHash The revision hash to checkout.
+     * Collects the inputs that generated files depend on, they are recorded in the {@link GenerationManifest}.
+     * @param mojmaps The mojang mappings the files are generated from, or null if they do not use them.
+     * @return The builddata revision, the hash of the mojang mappings and the generator version.
+     * @throws IOException If the mojang mappings could not be hashed.
      */
-    public void pullBuildDataGit(String revHash) {
-        if(gitClient == null) {
+    private Map<String, String> generationInputs(MappingFile mojmaps) throws IOException {
+        Map<String, String> inputs = new HashMap<>();
+        inputs.put("buildData", getVersionData().getRefs().getBuildData());
+        if(mojmaps != null) {
+            // the sidecar written with the download has the hash, unless the file was changed since
+            String sha1 = AtomicFileOutputStream.readChecksum(mojmaps.getFile());
+            inputs.put("mojmaps", sha1 != null ? sha1 : IOUtils.sha1(mojmaps.getFile()));
+        }
+        inputs.put("generator", String.valueOf(GENERATOR_VERSION));
+        return inputs;
+    }
+
+    /**
+     * Runs an operation on the builddata directory while holding its lock.
+     * Concurrent calls for the same artifact wait for the call that is already running and share its result.
+     * Calls from inside an operation run right away, the directory is already locked for them.
+     * @param artifact What the operation produces, together with the version and directory it identifies the operation.
+     * @param operation The operation.
+     * @return The result of the operation, or null if the directory could not be locked.
+     */
+    private <T> T exclusive(String artifact, Supplier<T> operation) {
+        DirectoryLock lock = DirectoryLock.get(buildDataDir);
+        if(lock.isHeldByCurrentThread()) {
+            return operation.get();
+        }
+
+        return FLIGHTS.run(rev + "/" + artifact + "@" + lock.getLockFile().getPath(), () -> {
             try {
-                this.gitClient = Git.cloneRepository()
-                        .setURI(repo)
-                        .setDirectory(buildDataDir)
-                        .call();
-            } catch (GitAPIException e) {
+                lock.lock();
+            } catch(IOException e) {
                 e.printStackTrace();
-                return;
+                return null;
             }
-        }
+            try {
+                return operation.get();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private static String artifact(String name, boolean deleteRepoIfExists) {
+        // a call that starts from scratch must not be answered by one that reuses the directory
+        return deleteRepoIfExists ? name + "-fresh" : name;
+    }
+
+    /**
+     * Callers of the same flight get the same result, so every caller gets its own list.
+     */
+    private static List<MappingFile> copy(List<MappingFile> mappings) {
+        return mappings == null ? null : new ArrayList<>(mappings);
+    }
 
+    private static MapUtil loadClassMappings(MappingFile classMappings) throws IOException {
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(classMappings.getFile());
+        return mapUtil;
+    }
+
+    /**
+     * Checks out the specified revision hash from the shared builddata mirror.
+     * The mirror is cloned on first use and only fetched again if it does not know the revision yet.
+     * The files are written to the directory specified in the constructor.
+     * @param revHash The revision hash to checkout.
+     */
+    public void pullBuildDataGit(String revHash) {
+        exclusive("checkout-" + revHash, () -> {
+            pullBuildDataGitLocked(revHash);
+            return null;
+        });
+    }
+
+    private void pullBuildDataGitLocked(String revHash) {
         try {
-            gitClient.fetch()
-                    .setRemote("origin")
-                    .setRefSpecs(new RefSpec("+refs/heads/*:refs/remotes/origin/*"))
-                    .call();
-            gitClient.checkout()
-                    .setName(revHash)
-                    .call();
-        } catch(Exception e) {
+            mirror.ensureCommit(revHash);
+            GenerationManifest manifest = GenerationManifest.load(buildDataDir);
+            // files the previous revision had, but this one does not, are deleted
+            mirror.checkout(revHash, buildDataDir, manifest.getCheckout());
+            manifest.setCheckout(revHash);
+        } catch(IOException | GitAPIException e) {
             e.printStackTrace();
         }
     }
@@ -478,10 +985,19 @@ public class SpigotMappingsDownloader implements AutoCloseable {
         return rev;
     }
 
+    public BuildDataMirror getMirror() {
+        return mirror;
+    }
+
+    public DownloadCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Does not close the builddata mirror, as it is shared with other downloaders.
+     * Use {@link BuildDataMirror#close()} on {@link #getMirror()} if it is no longer needed.
+     */
     @Override
-    public void close() throws Exception {
-        if(gitClient != null) {
-            gitClient.close();
-        }
+    public void close() {
     }
 }
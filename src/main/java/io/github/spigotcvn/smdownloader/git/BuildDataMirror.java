@@ -0,0 +1,390 @@
+package io.github.spigotcvn.smdownloader.git;
+
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+import io.github.spigotcvn.smdownloader.io.DirectoryLock;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A local bare mirror of the builddata git repository.
+ * All downloaders pointing at the same mirror directory share one instance,
+ * so the builddata history only has to be cloned once no matter how many versions are resolved.
+ * Single revisions are fetched on demand and materialized by reading their tree straight out of the object database.
+ * Fetches are serialized by a {@link DirectoryLock} on the mirror, reads do not wait for them.
+ */
+public class BuildDataMirror implements AutoCloseable {
+    private static final Map<File, BuildDataMirror> MIRRORS = new HashMap<>();
+
+    private final File directory;
+    private final String remote;
+    // written once under the monitor, read without it
+    private volatile Repository repository;
+
+    private BuildDataMirror(File directory, String remote) {
+        this.directory = directory;
+        this.remote = remote;
+    }
+
+    /**
+     * Gets the shared mirror for the given directory, creating it if it is not known yet.
+     * @param directory The directory of the bare repository.
+     * @param remote The URL of the builddata git repository to mirror.
+     * @return The shared mirror for the directory.
+     * @throws IllegalArgumentException If the directory is already used to mirror another remote.
+     */
+    public static BuildDataMirror get(File directory, String remote) {
+        File key = directory.getAbsoluteFile();
+        synchronized(MIRRORS) {
+            BuildDataMirror mirror = MIRRORS.get(key);
+            if(mirror == null) {
+                mirror = new BuildDataMirror(key, remote);
+                MIRRORS.put(key, mirror);
+            } else if(!mirror.remote.equals(remote)) {
+                // the objects of two remotes would end up mixed in one repository
+                throw new IllegalArgumentException("The mirror " + key + " already mirrors " + mirror.remote + ", not " + remote);
+            }
+            return mirror;
+        }
+    }
+
+    /**
+     * Opens the bare repository, creating an empty one pointing at the remote if it does not exist yet.
+     * Nothing is fetched here, revisions are fetched when they are needed.
+     * Only the first call opens the repository, later calls return it without locking.
+     * @return The opened repository.
+     * @throws IOException If the repository could not be opened or created.
+     */
+    public Repository getRepository() throws IOException {
+        Repository repo = repository;
+        if(repo != null) {
+            return repo;
+        }
+
+        synchronized(this) {
+            if(repository == null) {
+                // another process sharing the mirror could be creating it right now
+                DirectoryLock lock = DirectoryLock.get(directory);
+                lock.lock();
+                try {
+                    boolean exists = new File(directory, "objects").isDirectory();
+                    repo = new FileRepositoryBuilder()
+                            .setGitDir(directory)
+                            .setBare()
+                            .build();
+                    if(!exists) {
+                        repo.create(true);
+                        StoredConfig config = repo.getConfig();
+                        config.setString("remote", "origin", "url", remote);
+                        config.save();
+                    }
+                    repository = repo;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return repository;
+        }
+    }
+
+    /**
+     * Fetches only the specified commit and its history from the remote.
+     * The commit is requested by its id, so no branches are fetched into the mirror,
+     * and it is kept reachable under refs/builddata/.
+     * This needs a JGit version and a remote that support fetching commits by their id,
+     * older JGit versions only fetch refs the remote advertises and fail here.
+     * @param revHash The full revision hash to fetch.
+     * @return True if the commit is present after the fetch, false if it could not be fetched by its id.
+     * @throws IOException If the repository could not be opened.
+     */
+    public boolean fetchCommit(String revHash) throws IOException {
+        if(!ObjectId.isId(revHash)) {
+            return false;
+        }
+
+        Repository repo = getRepository();
+        DirectoryLock lock = DirectoryLock.get(directory);
+        lock.lock();
+        try {
+            String ref = "refs/builddata/" + revHash;
+            Git.wrap(repo).fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec("+" + revHash + ":" + ref))
+                    .call();
+            ObjectId commitId = resolveCommit(revHash);
+            if(commitId == null) {
+                return false;
+            }
+            // newer JGit versions fetch ids without updating the destination, the ref keeps the commit from being pruned
+            if(repo.exactRef(ref) == null) {
+                RefUpdate update = repo.updateRef(ref);
+                update.setNewObjectId(commitId);
+                update.forceUpdate();
+            }
+            return true;
+        } catch(GitAPIException | JGitInternalException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fetches all branches from the remote into the mirror.
+     * Threads and processes sharing the mirror fetch one after another.
+     * @throws IOException If the repository could not be opened.
+     * @throws GitAPIException If the fetch failed.
+     */
+    public void fetch() throws IOException, GitAPIException {
+        Repository repo = getRepository();
+        DirectoryLock lock = DirectoryLock.get(directory);
+        lock.lock();
+        try {
+            Git.wrap(repo).fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"))
+                    .call();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the mirror already contains the specified commit.
+     * @param revHash The revision hash to look for.
+     * @return True if the commit is present in the object database, false otherwise.
+     * @throws IOException If the repository could not be read.
+     */
+    public boolean hasCommit(String revHash) throws IOException {
+        return resolveCommit(revHash) != null;
+    }
+
+    /**
+     * Makes sure the specified commit is present, fetching it from the remote if it is not.
+     * Only the commit is fetched if the remote serves it by its id, see {@link #fetchCommit(String)},
+     * otherwise all branches are fetched instead.
+     * Processes sharing the mirror fetch one after another, a commit fetched by one of them is not fetched again.
+     * @param revHash The revision hash that is needed.
+     * @throws IOException If the repository could not be read.
+     * @throws GitAPIException If the fetch failed.
+     */
+    public void ensureCommit(String revHash) throws IOException, GitAPIException {
+        if(hasCommit(revHash)) {
+            return;
+        }
+
+        DirectoryLock lock = DirectoryLock.get(directory);
+        lock.lock();
+        try {
+            // whoever held the lock before could have fetched it already
+            if(!hasCommit(revHash) && !fetchCommit(revHash)) {
+                fetch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the tree of the specified revision into a directory.
+     * Unlike a checkout, this does not create a working tree or an index,
+     * it only writes the files of that revision.
+     * Files in the subdirectories of the tree that are not part of the revision are deleted,
+     * files next to it, like generated mappings, are kept.
+     * @param revHash The revision hash to materialize.
+     * @param target The directory to write the files to.
+     * @throws IOException If the revision is unknown or the files could not be written.
+     */
+    public void checkout(String revHash, File target) throws IOException {
+        checkout(revHash, target, null);
+    }
+
+    /**
+     * Writes the tree of the specified revision into a directory that holds another revision.
+     * Like {@link #checkout(String, File)}, but files of the previous revision
+     * that are not part of the new one are deleted as well, including the ones next to the subdirectories.
+     * @param revHash The revision hash to materialize.
+     * @param target The directory to write the files to.
+     * @param previousRevHash The revision that was written into the directory before, or null if it is not known.
+     * @throws IOException If the revision is unknown or the files could not be written.
+     */
+    public void checkout(String revHash, File target, String previousRevHash) throws IOException {
+        Repository repo = getRepository();
+        ObjectId commitId = resolveCommit(revHash);
+        if(commitId == null) {
+            throw new IOException("Unknown builddata revision: " + revHash);
+        }
+
+        Set<String> paths = new HashSet<>();
+        try(ObjectReader reader = repo.newObjectReader();
+            RevWalk revWalk = new RevWalk(reader);
+            TreeWalk treeWalk = new TreeWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+
+            while(treeWalk.next()) {
+                if(treeWalk.getFileMode(0) == FileMode.GITLINK) continue;
+
+                String path = treeWalk.getPathString();
+                paths.add(path);
+                File file = new File(target, path);
+                File parent = file.getParentFile();
+                if(!parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("Unable to create directory " + parent);
+                }
+
+                try(AtomicFileOutputStream output = new AtomicFileOutputStream(file, false)) {
+                    reader.open(treeWalk.getObjectId(0)).copyTo(output);
+                    output.commit();
+                }
+            }
+        }
+
+        ObjectId previousId = previousRevHash == null || previousRevHash.equals(revHash) ? null : resolveCommit(previousRevHash);
+        if(previousId != null) {
+            for(String path : listFiles(previousId)) {
+                if(!paths.contains(path)) {
+                    deleteFile(target, path);
+                }
+            }
+        }
+
+        // the subdirectories only ever hold files of the tree, even if the previous revision is not known
+        Set<String> directories = new HashSet<>();
+        for(String path : paths) {
+            int slash = path.indexOf('/');
+            if(slash != -1) {
+                directories.add(path.substring(0, slash));
+            }
+        }
+        for(String directory : directories) {
+            deleteUntracked(target, directory, paths);
+        }
+    }
+
+    private Set<String> listFiles(ObjectId commitId) throws IOException {
+        Set<String> paths = new HashSet<>();
+        try(ObjectReader reader = getRepository().newObjectReader();
+            RevWalk revWalk = new RevWalk(reader);
+            TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(revWalk.parseCommit(commitId).getTree());
+            treeWalk.setRecursive(true);
+            while(treeWalk.next()) {
+                paths.add(treeWalk.getPathString());
+            }
+        }
+        return paths;
+    }
+
+    private static void deleteUntracked(File target, String path, Set<String> paths) throws IOException {
+        File file = new File(target, path);
+        if(file.isDirectory()) {
+            File[] children = file.listFiles();
+            if(children != null) {
+                for(File child : children) {
+                    deleteUntracked(target, path + "/" + child.getName(), paths);
+                }
+            }
+        } else if(file.exists() && !paths.contains(path)) {
+            deleteFile(target, path);
+        }
+    }
+
+    /**
+     * Deletes a file of a checked out tree, and the directories that are empty afterwards.
+     */
+    private static void deleteFile(File target, String path) throws IOException {
+        File file = new File(target, path);
+        if(file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        File parent = file.getParentFile();
+        String[] children;
+        while(!parent.equals(target) && (children = parent.list()) != null && children.length == 0) {
+            parent.delete();
+            parent = parent.getParentFile();
+        }
+    }
+
+    /**
+     * Reads a single file of the specified revision straight from the object database.
+     * Nothing is written to disk, only the blob for the given path is loaded.
+     * @param revHash The revision hash to read the file from.
+     * @param path The path of the file inside the repository, separated by '/'.
+     * @return The contents of the file, or null if the revision does not contain it.
+     * @throws IOException If the revision is unknown or the file could not be read.
+     */
+    public byte[] readFile(String revHash, String path) throws IOException {
+        Repository repo = getRepository();
+        ObjectId commitId = resolveCommit(revHash);
+        if(commitId == null) {
+            throw new IOException("Unknown builddata revision: " + revHash);
+        }
+
+        try(ObjectReader reader = repo.newObjectReader();
+            RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            try(TreeWalk treeWalk = TreeWalk.forPath(reader, path, commit.getTree())) {
+                if(treeWalk == null) {
+                    return null;
+                }
+                return reader.open(treeWalk.getObjectId(0)).getBytes();
+            }
+        }
+    }
+
+    private ObjectId resolveCommit(String revHash) throws IOException {
+        Repository repo = getRepository();
+        try {
+            return repo.resolve(revHash + "^{commit}");
+        } catch(MissingObjectException e) {
+            return null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public String getRemote() {
+        return remote;
+    }
+
+    /**
+     * Closes the underlying repository and forgets this shared mirror.
+     * The next call to {@link #get(File, String)} for the same directory will open it again.
+     */
+    @Override
+    public void close() {
+        synchronized(MIRRORS) {
+            MIRRORS.remove(directory);
+        }
+        synchronized(this) {
+            Repository repo = repository;
+            if(repo != null) {
+                repository = null;
+                repo.close();
+            }
+        }
+    }
+}
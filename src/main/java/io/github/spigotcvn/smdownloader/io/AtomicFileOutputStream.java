@@ -0,0 +1,247 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+/**
+ * Writes a file through a temporary file in the same directory, which replaces the file in one atomic rename
+ * when {@link #commit()} is called. Readers never see a partially written file:
+ * if the stream is closed without being committed, because writing failed or the process was killed,
+ * the previous file stays as it was.
+ * <p>
+ * With a checksum, the SHA-1, length and modification time of the new file are written to a sidecar file next to it,
+ * which {@link #isIntact(File)} uses to verify the file before it is reused.
+ * As long as the length and modification time of the file still match the sidecar, the SHA-1 is trusted without hashing the file again.
+ */
+public class AtomicFileOutputStream extends FilterOutputStream {
+    public static final String CHECKSUM_SUFFIX = ".sha1";
+
+    private final File file;
+    private final File temp;
+    private final FileOutputStream fileOutput;
+    private final MessageDigest digest;
+    private long length;
+    private boolean closed;
+
+    /**
+     * Starts writing a file with a checksum sidecar.
+     * @param file The file to replace once the stream is committed.
+     * @throws IOException If the temporary file could not be created.
+     */
+    public AtomicFileOutputStream(File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * Starts writing a file.
+     * @param file The file to replace once the stream is committed.
+     * @param checksum Whether to write a sidecar with the SHA-1, length and modification time of the file.
+     * @throws IOException If the temporary file could not be created.
+     */
+    public AtomicFileOutputStream(File file, boolean checksum) throws IOException {
+        super(null);
+        this.file = file;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if(!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        // hidden and padded, temp file prefixes need at least three characters
+        this.temp = File.createTempFile("." + file.getName() + ".", ".tmp", directory);
+        this.fileOutput = new FileOutputStream(temp);
+        this.out = fileOutput;
+        this.digest = checksum ? IOUtils.sha1Digest() : null;
+    }
+
+    /**
+     * @return A buffered UTF-8 writer over this stream.
+     *         Flush it before committing, closing it closes this stream.
+     */
+    public BufferedWriter newWriter() {
+        return new BufferedWriter(new OutputStreamWriter(this, StandardCharsets.UTF_8.newEncoder()));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        out.write(b);
+        if(digest != null) {
+            digest.update((byte) b);
+        }
+        length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        out.write(b, off, len);
+        if(digest != null) {
+            digest.update(b, off, len);
+        }
+        length += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Syncs the written bytes to disk and moves them into place, replacing the previous file.
+     * The sidecar is written afterwards, a crash in between leaves a sidecar that does not match.
+     * @throws IOException If the file could not be written or moved.
+     */
+    public void commit() throws IOException {
+        commit(null);
+    }
+
+    /**
+     * Commits the file like {@link #commit()}, but only if the written bytes have the expected SHA-1.
+     * Otherwise the bytes are discarded and the previous file stays as it was.
+     * @param expectedSha1 The SHA-1 the written bytes must have as hex, or null to commit them without checking.
+     * @throws IOException If the hash does not match, or the file could not be written or moved.
+     */
+    public void commit(String expectedSha1) throws IOException {
+        checkOpen();
+        String sha1 = digest == null ? null : IOUtils.toHex(digest.digest());
+        if(expectedSha1 != null) {
+            if(digest == null) {
+                throw new IllegalStateException("The stream does not compute a checksum");
+            }
+            if(!expectedSha1.equalsIgnoreCase(sha1)) {
+                close();
+                throw new IOException("Expected " + file.getName() + " to have the SHA-1 " + expectedSha1 + ", but it was " + sha1);
+            }
+        }
+
+        closed = true;
+        try {
+            try {
+                out.flush();
+                // the contents must be on disk before the rename is, or a crash could leave an empty file behind
+                fileOutput.getFD().sync();
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+
+        if(sha1 != null) {
+            String checksum = sha1 + " " + length + " " + file.lastModified() + "\n";
+            try(AtomicFileOutputStream sidecar = new AtomicFileOutputStream(checksumFile(file), false)) {
+                sidecar.write(checksum.getBytes(StandardCharsets.UTF_8));
+                sidecar.commit();
+            }
+        }
+    }
+
+    /**
+     * Discards everything that was written if the stream was not committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if(closed) {
+            throw new IOException("The stream is already committed or closed");
+        }
+    }
+
+    /**
+     * Checks a file against the sidecar written when it was committed.
+     * @param file The file to check.
+     * @return True if the file and its sidecar exist and the length and SHA-1 of the file match it.
+     */
+    public static boolean isIntact(File file) {
+        return isIntact(file, null);
+    }
+
+    /**
+     * Checks a file against the sidecar written when it was committed, and against the hash it is expected to have.
+     * The file is only hashed if its modification time changed since, a file that changed in length is rejected right away.
+     * @param file The file to check.
+     * @param expectedSha1 The SHA-1 the file must have as hex, or null to accept any.
+     * @return True if the file is intact and has the expected SHA-1.
+     */
+    public static boolean isIntact(File file, String expectedSha1) {
+        String[] checksum = readSidecar(file);
+        if(checksum == null || (expectedSha1 != null && !expectedSha1.equalsIgnoreCase(checksum[0]))) {
+            return false;
+        }
+        if(isUnchanged(file, checksum)) {
+            return true;
+        }
+
+        try {
+            return Long.parseLong(checksum[1]) == file.length() && checksum[0].equals(IOUtils.sha1(file));
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the SHA-1 of a file from its sidecar, without hashing the file.
+     * @param file The file to get the SHA-1 of.
+     * @return The SHA-1 as hex, or null if there is no sidecar or the file was changed since it was written.
+     */
+    public static String readChecksum(File file) {
+        String[] checksum = readSidecar(file);
+        return checksum != null && isUnchanged(file, checksum) ? checksum[0] : null;
+    }
+
+    /**
+     * @return The SHA-1, length and modification time of a file,
+     *         or null if the file or sidecar is missing or the sidecar is malformed.
+     */
+    private static String[] readSidecar(File file) {
+        File sidecar = checksumFile(file);
+        if(!file.isFile() || !sidecar.isFile()) {
+            return null;
+        }
+
+        try {
+            String[] checksum = new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+            if(checksum.length != 3) {
+                return null;
+            }
+            Long.parseLong(checksum[1]);
+            Long.parseLong(checksum[2]);
+            return checksum;
+        } catch(IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isUnchanged(File file, String[] checksum) {
+        return Long.parseLong(checksum[1]) == file.length()
+                && Long.parseLong(checksum[2]) == file.lastModified();
+    }
+
+    /**
+     * @return The sidecar holding the checksum of a file.
+     */
+    public static File checksumFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + CHECKSUM_SUFFIX);
+    }
+}
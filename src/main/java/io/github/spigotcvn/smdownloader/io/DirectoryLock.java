@@ -0,0 +1,103 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock on a directory, held against other threads and other processes.
+ * Threads of the same process are ordered by a reentrant lock, other processes by a {@link FileLock}
+ * on a lock file next to the directory, so the directory itself can still be deleted and recreated while it is locked.
+ * The lock is reentrant, nested calls of the holding thread do not block.
+ */
+public final class DirectoryLock {
+    // file locks are held by the whole jvm, so every directory must have exactly one instance per process
+    private static final Map<String, DirectoryLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final File lockFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private DirectoryLock(File lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Gets the lock of a directory.
+     * @param directory The directory to lock, it does not need to exist.
+     * @return The lock, the same instance for every path that points at the directory.
+     */
+    public static DirectoryLock get(File directory) {
+        File absolute = directory.getAbsoluteFile().toPath().normalize().toFile();
+        return LOCKS.computeIfAbsent(absolute.getPath(),
+                path -> new DirectoryLock(new File(absolute.getParentFile(), absolute.getName() + ".lock")));
+    }
+
+    /**
+     * Acquires the lock, waiting for other threads and processes to release it first.
+     * @throws IOException If the lock file could not be locked.
+     */
+    public void lock() throws IOException {
+        lock.lock();
+        if(lock.getHoldCount() > 1) {
+            return;
+        }
+
+        try {
+            File parent = lockFile.getParentFile();
+            if(!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = channel.lock();
+        } catch(IOException | RuntimeException e) {
+            closeChannel();
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the lock once it was released as often as it was acquired.
+     */
+    public void unlock() {
+        if(lock.getHoldCount() == 1) {
+            closeChannel();
+        }
+        lock.unlock();
+    }
+
+    /**
+     * @return Whether the current thread holds the lock.
+     */
+    public boolean isHeldByCurrentThread() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    public File getLockFile() {
+        return lockFile;
+    }
+
+    private void closeChannel() {
+        // the lock file is never deleted, another process could be waiting on it
+        try {
+            if(fileLock != null) {
+                fileLock.release();
+            }
+            if(channel != null) {
+                channel.close();
+            }
+        } catch(IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileLock = null;
+            channel = null;
+        }
+    }
+}
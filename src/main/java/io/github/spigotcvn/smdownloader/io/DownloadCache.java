@@ -0,0 +1,451 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A persistent, content addressed cache for downloaded files.
+ * Every URL has a small index entry pointing at the SHA-1 of its contents,
+ * the contents themselves are stored once per hash under objects/.
+ * Entries remember the ETag and Last-Modified of their response, so stale entries can be revalidated cheaply.
+ * When the cache grows over its maximum size, the least recently used entries are evicted.
+ * The cache is guarded by a {@link DirectoryLock}, so it can be shared by threads and processes.
+ * Cached contents are handed out as streams opened while the cache is locked,
+ * an eviction running after that can not take the contents away from a reader.
+ */
+public class DownloadCache {
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private final File directory;
+    private final DirectoryLock lock;
+    private final File indexDir;
+    private final File objectsDir;
+    private final long maxSize;
+
+    /**
+     * Creates a new DownloadCache with a maximum size of {@link #DEFAULT_MAX_SIZE}.
+     * @param directory The directory to store the cache in.
+     */
+    public DownloadCache(File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new DownloadCache.
+     * @param directory The directory to store the cache in.
+     * @param maxSize The maximum size of all cached contents in bytes.
+     */
+    public DownloadCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.lock = DirectoryLock.get(directory);
+        this.indexDir = new File(directory, "index");
+        this.objectsDir = new File(directory, "objects");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cached contents of a URL without touching the network.
+     * @param url The URL to look up.
+     * @return The cached contents, which the caller has to close, or null if the URL is not cached.
+     * @throws IOException If the cache could not be locked.
+     */
+    public InputStream get(URL url) throws IOException {
+        lock.lock();
+        try {
+            Properties entry = getEntry(url);
+            return entry == null ? null : openObject(entry.getProperty("hash"));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the index entry of a URL and marks it as used.
+     * Entries whose contents are gone are removed.
+     * @param url The URL to look up.
+     * @return The index entry, or null if the URL is not cached.
+     */
+    private Properties getEntry(URL url) {
+        File indexFile = indexFile(url);
+        if(!indexFile.exists()) {
+            return null;
+        }
+
+        Properties entry = readEntry(indexFile);
+        String hash = entry == null ? null : entry.getProperty("hash");
+        File object = hash == null ? null : objectFile(hash);
+        if(object == null || !object.exists()) {
+            indexFile.delete();
+            return null;
+        }
+
+        // the modification time of the index entry is used as the last access time
+        indexFile.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Gets the contents of a URL, downloading them into the cache if they are not cached yet.
+     * Cached contents are always served without touching the network,
+     * use this for URLs whose contents never change.
+     * @param url The URL to get the contents of.
+     * @return The cached contents, which the caller has to close.
+     * @throws IOException If the contents could not be downloaded or stored.
+     * @throws HTTPNotOkException If the response code is not in the 200 range.
+     */
+    public InputStream download(URL url) throws IOException {
+        return download(url, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the contents of a URL whose SHA-1 is known up front, like the objects on Mojang's piston-data server.
+     * Cached contents with that hash are verified and served without touching the network,
+     * no matter which URL they were stored for.
+     * Otherwise the contents are downloaded, hashed while they are streamed to disk and only stored if the hash matches.
+     * @param url The URL to get the contents of.
+     * @param sha1 The SHA-1 of the contents as hex.
+     * @return The cached contents, which the caller has to close.
+     * @throws IOException If the contents could not be downloaded or stored, or they do not have the expected hash.
+     * @throws HTTPNotOkException If the response code is not in the 200 range.
+     */
+    public InputStream download(URL url, String sha1) throws IOException {
+        String hash = sha1.toLowerCase(Locale.ROOT);
+        lock.lock();
+        try {
+            File object = objectFile(hash);
+            if(object.exists()) {
+                if(hash.equals(IOUtils.sha1(object))) {
+                    Properties entry = getEntry(url);
+                    if(entry == null || !hash.equals(entry.getProperty("hash"))) {
+                        writeEntry(url, hash, null, null);
+                    }
+                    return new FileInputStream(object);
+                }
+                // damaged on disk, replace it with a fresh download
+                object.delete();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try(InputStream input = IOUtils.getDownloadinputStream(url)) {
+            return put(url, input, null, null, hash);
+        }
+    }
+
+    /**
+     * Gets the contents of a URL through the cache.
+     * Cached contents that were validated less than maxAge milliseconds ago are served without touching the network.
+     * Older ones are revalidated with a conditional request using the stored ETag and Last-Modified,
+     * a 304 response counts as a cache hit and the contents are only downloaded again if they changed.
+     * If the server can not be reached at all, the stale contents are served.
+     * @param url The URL to get the contents of.
+     * @param maxAge How long cached contents are trusted without revalidation, in milliseconds.
+     * @return The cached contents, which the caller has to close.
+     * @throws IOException If the contents could not be downloaded or stored.
+     * @throws HTTPNotOkException If the response code is neither in the 200 range nor 304.
+     */
+    public InputStream download(URL url, long maxAge) throws IOException {
+        Properties entry;
+        lock.lock();
+        try {
+            entry = getEntry(url);
+            if(entry != null && System.currentTimeMillis() - getValidated(entry) < maxAge) {
+                InputStream cached = openObject(entry.getProperty("hash"));
+                if(cached != null) {
+                    return cached;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        String eTag = entry == null ? null : entry.getProperty("etag");
+        String lastModified = entry == null ? null : entry.getProperty("lastModified");
+        HttpURLConnection connection;
+        try {
+            connection = IOUtils.openConditionalConnection(url, eTag, lastModified);
+        } catch(HTTPNotOkException e) {
+            throw e;
+        } catch(IOException e) {
+            InputStream stale = entry == null ? null : get(url);
+            if(stale != null) {
+                return stale;
+            }
+            throw e;
+        }
+
+        if(connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.getInputStream().close();
+            InputStream cached = revalidate(url, entry.getProperty("hash"));
+            if(cached != null) {
+                return cached;
+            }
+            // evicted while revalidating, fetch it again without validators and keep the new ones
+            connection = IOUtils.openConditionalConnection(url, null, null);
+        }
+
+        try(InputStream input = connection.getInputStream()) {
+            return put(url, input, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), null);
+        }
+    }
+
+    /**
+     * Marks the entry of a URL as validated after a 304 response, as long as it still points at the same contents.
+     * @param url The URL that was revalidated.
+     * @param hash The SHA-1 of the contents the server confirmed.
+     * @return The cached contents, or null if they were evicted or replaced in the meantime.
+     */
+    private InputStream revalidate(URL url, String hash) throws IOException {
+        lock.lock();
+        try {
+            Properties entry = getEntry(url);
+            if(entry == null || !hash.equals(entry.getProperty("hash"))) {
+                return null;
+            }
+            entry.setProperty("validated", String.valueOf(System.currentTimeMillis()));
+            writeEntry(indexFile(url), entry);
+            return openObject(hash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the contents of a URL in the cache.
+     * @param url The URL the contents belong to.
+     * @param input The contents to store, the stream is read fully but not closed.
+     * @throws IOException If the contents could not be stored.
+     */
+    public void put(URL url, InputStream input) throws IOException {
+        put(url, input, null, null);
+    }
+
+    /**
+     * Stores the contents of a URL in the cache, together with the validators used to revalidate them.
+     * @param url The URL the contents belong to.
+     * @param input The contents to store, the stream is read fully but not closed.
+     * @param eTag The ETag header of the response, or null.
+     * @param lastModified The Last-Modified header of the response, or null.
+     * @throws IOException If the contents could not be stored.
+     */
+    public void put(URL url, InputStream input, String eTag, String lastModified) throws IOException {
+        put(url, input, eTag, lastModified, null).close();
+    }
+
+    /**
+     * Stores contents like {@link #put(URL, InputStream, String, String)}.
+     * @param expectedHash The SHA-1 the contents must have, or null.
+     * @return The stored contents, opened before entries are evicted to make room for them.
+     */
+    private InputStream put(URL url, InputStream input, String eTag, String lastModified, String expectedHash) throws IOException {
+        if(!objectsDir.exists() && !objectsDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + objectsDir);
+        }
+
+        File temp = File.createTempFile("download", ".tmp", objectsDir);
+        try {
+            String hash = store(input, temp);
+            if(expectedHash != null && !expectedHash.equals(hash)) {
+                throw new IOException("Expected " + url + " to have the SHA-1 " + expectedHash + ", but it was " + hash);
+            }
+
+            lock.lock();
+            try {
+                File object = objectFile(hash);
+                if(object.exists()) {
+                    temp.delete();
+                } else {
+                    Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                writeEntry(url, hash, eTag, lastModified);
+
+                InputStream stored = new FileInputStream(object);
+                evictEntries();
+                return stored;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Streams contents into a file, hashing them on the way so they are only read once.
+     * @return The SHA-1 of the contents as hex.
+     */
+    private static String store(InputStream input, File file) throws IOException {
+        MessageDigest digest = IOUtils.sha1Digest();
+        ByteBuffer buffer = IOUtils.acquireBuffer();
+        // the channel is not closed, the caller owns the stream
+        ReadableByteChannel source = Channels.newChannel(input);
+        try(FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            while(source.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                // hashing consumed the buffer, the same bytes are written next
+                buffer.rewind();
+                while(buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            IOUtils.releaseBuffer(buffer);
+        }
+        return IOUtils.toHex(digest.digest());
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into its maximum size again.
+     * Objects that are no longer referenced by any entry are deleted.
+     * @throws IOException If the cache could not be locked.
+     */
+    public void evict() throws IOException {
+        lock.lock();
+        try {
+            evictEntries();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictEntries() {
+        File[] entries = indexDir.listFiles();
+        if(entries == null) {
+            return;
+        }
+        List<File> indexFiles = new ArrayList<>();
+        for(File indexFile : entries) {
+            if(!indexFile.getName().endsWith(".tmp")) indexFiles.add(indexFile);
+        }
+        indexFiles.sort(Comparator.comparingLong(File::lastModified).reversed());
+
+        Set<String> kept = new HashSet<>();
+        long size = 0;
+        for(File indexFile : indexFiles) {
+            Properties entry = readEntry(indexFile);
+            String hash = entry == null ? null : entry.getProperty("hash");
+            File object = hash == null ? null : objectFile(hash);
+            if(object == null || !object.exists()) {
+                indexFile.delete();
+                continue;
+            }
+
+            if(!kept.contains(hash)) {
+                if(size + object.length() > maxSize && !kept.isEmpty()) {
+                    indexFile.delete();
+                    continue;
+                }
+                size += object.length();
+                kept.add(hash);
+            }
+        }
+
+        File[] objects = objectsDir.listFiles();
+        if(objects == null) {
+            return;
+        }
+        for(File object : objects) {
+            if(!object.getName().endsWith(".tmp") && !kept.contains(object.getName())) {
+                object.delete();
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    private File indexFile(URL url) {
+        return new File(indexDir, IOUtils.toHex(IOUtils.sha1Digest().digest(url.toString().getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static long getValidated(Properties entry) {
+        try {
+            return Long.parseLong(entry.getProperty("validated", "0"));
+        } catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private File objectFile(String hash) {
+        return new File(objectsDir, hash);
+    }
+
+    /**
+     * Opens the contents of an object, the cache has to be locked.
+     * @return The contents, or null if the object is gone.
+     */
+    private InputStream openObject(String hash) {
+        try {
+            return new FileInputStream(objectFile(hash));
+        } catch(FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Properties readEntry(File indexFile) {
+        Properties entry = new Properties();
+        try(InputStream input = new FileInputStream(indexFile)) {
+            entry.load(input);
+        } catch(IOException e) {
+            return null;
+        }
+        return entry;
+    }
+
+    private void writeEntry(URL url, String hash, String eTag, String lastModified) throws IOException {
+        Properties entry = new Properties();
+        entry.setProperty("url", url.toString());
+        entry.setProperty("hash", hash);
+        entry.setProperty("validated", String.valueOf(System.currentTimeMillis()));
+        if(eTag != null) {
+            entry.setProperty("etag", eTag);
+        }
+        if(lastModified != null) {
+            entry.setProperty("lastModified", lastModified);
+        }
+        writeEntry(indexFile(url), entry);
+    }
+
+    private void writeEntry(File indexFile, Properties entry) throws IOException {
+        if(!indexDir.exists() && !indexDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + indexDir);
+        }
+
+        File temp = File.createTempFile("entry", ".tmp", indexDir);
+        try(OutputStream output = new FileOutputStream(temp)) {
+            entry.store(output, null);
+        }
+        Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Remembers which inputs the generated files in a directory were made from,
+ * so files whose inputs did not change can be reused instead of being generated again.
+ * Inputs are named values like the builddata commit or the hash of the mojang mappings,
+ * every file has its own set, so a changed input only invalidates the files that depend on it.
+ * A file is only reused if it still matches the checksum it was written with, see {@link AtomicFileOutputStream},
+ * so files that were truncated or modified since are generated again.
+ * Files whose length and modification time still match their checksum sidecar are not hashed again.
+ * Every change is written to disk right away.
+ */
+public class GenerationManifest {
+    public static final String FILE_NAME = "manifest.properties";
+    private static final String OUTPUT_PREFIX = "output.";
+    private static final String CHECKOUT_KEY = "checkout";
+
+    private final File file;
+    private final Properties entries;
+
+    private GenerationManifest(File file, Properties entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * Loads the manifest of a directory.
+     * A missing or unreadable manifest is treated as empty, so everything is generated again.
+     * @param directory The directory holding the generated files.
+     * @return The manifest.
+     */
+    public static GenerationManifest load(File directory) {
+        File file = new File(directory, FILE_NAME);
+        Properties entries = new Properties();
+        if(file.exists()) {
+            try(InputStream input = new FileInputStream(file)) {
+                entries.load(input);
+            } catch(IOException e) {
+                entries.clear();
+            }
+        }
+        return new GenerationManifest(file, entries);
+    }
+
+    /**
+     * Checks whether files can be reused.
+     * @param inputs The inputs the files would be generated from now.
+     * @param outputs The generated files.
+     * @return True if all files are intact and were generated from exactly these inputs.
+     */
+    public boolean isUpToDate(Map<String, String> inputs, File... outputs) {
+        String fingerprint = fingerprint(inputs);
+        for(File output : outputs) {
+            // the fingerprint is compared first, it is cheaper than reading the sidecar
+            if(!fingerprint.equals(entries.getProperty(OUTPUT_PREFIX + output.getName()))
+                    || !AtomicFileOutputStream.isIntact(output)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that files were generated from a set of inputs.
+     * @param inputs The inputs the files were generated from.
+     * @param outputs The generated files.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void record(Map<String, String> inputs, File... outputs) throws IOException {
+        String fingerprint = fingerprint(inputs);
+        for(File output : outputs) {
+            entries.setProperty(OUTPUT_PREFIX + output.getName(), fingerprint);
+        }
+        save();
+    }
+
+    /**
+     * Forgets the inputs of files, call this before generating them again,
+     * so files that are only partially written when the generation fails are never reused.
+     * @param outputs The files that are about to be generated.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void invalidate(File... outputs) throws IOException {
+        for(File output : outputs) {
+            entries.remove(OUTPUT_PREFIX + output.getName());
+        }
+        save();
+    }
+
+    /**
+     * @return The builddata revision that is checked out into the directory, or null if it is not known.
+     */
+    public String getCheckout() {
+        return entries.getProperty(CHECKOUT_KEY);
+    }
+
+    /**
+     * Records which builddata revision is checked out into the directory.
+     * @param revHash The checked out revision.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void setCheckout(String revHash) throws IOException {
+        entries.setProperty(CHECKOUT_KEY, revHash);
+        save();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private static String fingerprint(Map<String, String> inputs) {
+        // sorted, so the same inputs always give the same value
+        return new TreeMap<>(inputs).toString();
+    }
+
+    private void save() throws IOException {
+        try(AtomicFileOutputStream output = new AtomicFileOutputStream(file, false)) {
+            entries.store(output, "Inputs of the generated mappings, delete this file to generate everything again");
+            output.commit();
+        }
+    }
+}
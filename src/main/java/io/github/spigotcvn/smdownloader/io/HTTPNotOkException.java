@@ -12,6 +12,7 @@ public class HTTPNotOkException extends IOException {
 
     public HTTPNotOkException(int errorCode) {
         super("HTTP response code was not OK: " + errorCode);
+        this.errorCode = errorCode;
     }
 
     public int getErrorCode() {
@@ -3,8 +3,22 @@ package io.github.spigotcvn.smdownloader.io;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class IOUtils {
+    static final int BUFFER_SIZE = 64 * 1024;
+    // direct buffers are expensive to allocate and only freed by the garbage collector, so a few are kept around
+    private static final ArrayBlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(16);
+
     /**
      * Deletes a directory and all its contents.
      * @param file the directory to delete
@@ -20,20 +34,60 @@ public class IOUtils {
 
     /**
      * Reads the contents of a file into a string.
-     * @param file the file to read
+     * The whole file is read, no matter how many reads that takes.
+     * @param file the file to read, encoded in UTF-8
      * @return the contents of the file as a string
      */
     public static String readFromFile(File file) {
-        String infoData;
-        try(BufferedInputStream infoStream = new BufferedInputStream(new FileInputStream(file))) {
-            byte[] buffer = new byte[infoStream.available()];
-            infoStream.read(buffer);
-            infoData = new String(buffer);
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
         } catch(IOException e) {
             e.printStackTrace();
             return null;
         }
-        return infoData;
+    }
+
+    /**
+     * Computes the SHA-1 hash of a file.
+     * @param file the file to hash
+     * @return the hash as lowercase hex
+     * @throws IOException if the file could not be read
+     */
+    public static String sha1(File file) throws IOException {
+        MessageDigest digest = sha1Digest();
+        try(InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while((bytesRead = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return a new SHA-1 message digest
+     */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Formats bytes as lowercase hex.
+     * @param bytes the bytes to format
+     * @return two hex digits for every byte
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
     }
 
     /**
@@ -45,26 +99,54 @@ public class IOUtils {
      * @throws HTTPNotOkException if the response code is not in the 200 range
      */
     public static InputStream getDownloadinputStream(URL downloadUrl) throws IOException {
+        return openConditionalConnection(downloadUrl, null, null).getInputStream();
+    }
+
+    /**
+     * Opens a GET connection to a URL, sending the validators of a cached copy if there is one.
+     * Will throw an {@link HTTPNotOkException} if the response code is neither in the 200 range
+     * nor {@link HttpURLConnection#HTTP_NOT_MODIFIED}, which the caller has to check for.
+     * @param downloadUrl the URL to open the connection to
+     * @param eTag the ETag of the cached copy, or null
+     * @param lastModified the Last-Modified date of the cached copy, or null
+     * @return the connection, with the response code already read
+     * @throws IOException if an I/O error occurs
+     * @throws HTTPNotOkException if the response code is not in the 200 range and not 304
+     */
+    public static HttpURLConnection openConditionalConnection(URL downloadUrl, String eTag, String lastModified) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) downloadUrl.openConnection();
         connection.setRequestMethod("GET");
+        if(eTag != null) {
+            connection.setRequestProperty("If-None-Match", eTag);
+        }
+        if(lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
 
         int responseCode = connection.getResponseCode();
+        if(responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && (eTag != null || lastModified != null)) {
+            return connection;
+        }
         // check whether it's in the 200 range
         if(responseCode < 200 || responseCode >= 300) {
+            connection.disconnect();
             throw new HTTPNotOkException(responseCode);
         }
 
-        return connection.getInputStream();
+        return connection;
     }
 
     /**
      * Downloads a file from an input stream to a file.
+     * The file is only replaced once the download is complete, with a checksum sidecar next to it.
      * @param input the input stream to download from
      * @param result the file to download to
      */
     public static void downloadFile(InputStream input, File result) {
-        try(OutputStream output = new FileOutputStream(result)) {
-            downloadFile(input, output);
+        try(AtomicFileOutputStream output = new AtomicFileOutputStream(result)) {
+            // copy passes errors on, an interrupted download must not be committed
+            copy(input, output);
+            output.commit();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -78,14 +160,95 @@ public class IOUtils {
      */
     public static void downloadFile(InputStream input, OutputStream output) {
         try {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = input.read(buffer)) != -1) {
-                output.write(buffer, 0, bytesRead);
-            }
-            output.flush();
+            copy(input, output);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Redirects an input stream to an output stream.
+     * Unlike {@link #downloadFile(InputStream, OutputStream)} errors are passed on to the caller.
+     * @param input the input stream to read from
+     * @param output the output stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public static void copy(InputStream input, OutputStream output) throws IOException {
+        // plain file streams are turned into their file channels here, so copies from and to files skip the buffer
+        copy(Channels.newChannel(input), Channels.newChannel(output));
+        output.flush();
+    }
+
+    /**
+     * Transfers everything from one channel to another, the channels are not closed.
+     * If either channel is a file channel, the bytes are transferred with
+     * {@link FileChannel#transferTo} or {@link FileChannel#transferFrom}, which lets the system copy them directly.
+     * Otherwise they are copied through a pooled direct buffer.
+     * @param source the channel to read from, until its end
+     * @param target the channel to write to
+     * @return the amount of bytes transferred
+     * @throws IOException if an I/O error occurs
+     */
+    public static long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        if(source instanceof FileChannel) {
+            FileChannel file = (FileChannel) source;
+            long start = file.position();
+            long position = start;
+            long size = file.size();
+            long transferred;
+            while(position < size && (transferred = file.transferTo(position, size - position, target)) > 0) {
+                position += transferred;
+            }
+            // transfers do not move the position of the channel
+            file.position(position);
+            return position - start;
+        }
+
+        if(target instanceof FileChannel) {
+            FileChannel file = (FileChannel) target;
+            long start = file.position();
+            long position = start;
+            long transferred;
+            // reads until the end of the source, 0 means nothing was left
+            while((transferred = file.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+                position += transferred;
+            }
+            file.position(position);
+            return position - start;
+        }
+
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long transferred = 0;
+            while(source.read(buffer) != -1) {
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    transferred += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return transferred;
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Takes a direct buffer of {@link #BUFFER_SIZE} bytes from the pool, or allocates one if the pool is empty.
+     * Every buffer must be given back with {@link #releaseBuffer(ByteBuffer)} once it is no longer used.
+     * @return a cleared buffer
+     */
+    static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFERS.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Gives a buffer back to the pool, it is dropped if the pool is full.
+     * @param buffer the buffer taken from {@link #acquireBuffer()}
+     */
+    static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        BUFFERS.offer(buffer);
+    }
 }
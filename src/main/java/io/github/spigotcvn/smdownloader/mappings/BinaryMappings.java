@@ -0,0 +1,338 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Random access lookups in a binary mappings file written by {@link BinaryMappingsWriter}.
+ * The file is memory mapped and queried in place by binary search, nothing is parsed up front,
+ * so opening the mappings of a version costs about as much as mapping the file.
+ * Lookups only read the buffer, instances can be shared between threads.
+ */
+public class BinaryMappings {
+    private static final int NAMESPACES = Namespace.values().length;
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int classCount;
+    private final int classTable;
+    private final int[] indexCounts = new int[NAMESPACES];
+    private final int[] indexPositions = new int[NAMESPACES];
+    private final int memberCount;
+    private final int memberTable;
+    private final int headerCount;
+    private final int headerTable;
+
+    /**
+     * Creates lookups over binary mappings that are already in memory.
+     * @param buffer The contents of a binary mappings file, it must not be modified afterwards.
+     * @throws IOException If the contents are not binary mappings of a supported version.
+     */
+    public BinaryMappings(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < BinaryMappingsWriter.HEADER_SIZE || buffer.getInt(0) != BinaryMappingsWriter.MAGIC) {
+            throw new IOException("Not a binary mappings file");
+        }
+        if (buffer.getInt(4) != BinaryMappingsWriter.VERSION) {
+            throw new IOException("Unsupported binary mappings version " + buffer.getInt(4));
+        }
+
+        int position = 8;
+        stringCount = buffer.getInt(position);
+        stringOffsets = buffer.getInt(position + 4);
+        classCount = buffer.getInt(position + 8);
+        classTable = buffer.getInt(position + 12);
+        position += 16;
+        for (int i = 0; i < NAMESPACES; i++) {
+            indexCounts[i] = buffer.getInt(position);
+            indexPositions[i] = buffer.getInt(position + 4);
+            position += 8;
+        }
+        memberCount = buffer.getInt(position);
+        memberTable = buffer.getInt(position + 4);
+        headerCount = buffer.getInt(position + 8);
+        headerTable = buffer.getInt(position + 12);
+
+        if (headerTable + 4L * headerCount > buffer.limit()) {
+            throw new IOException("Binary mappings file is truncated");
+        }
+    }
+
+    /**
+     * Memory maps a binary mappings file.
+     * The file stays mapped until the lookups are garbage collected, and can not be replaced or deleted on windows
+     * until then. Use {@link #read(File)} for lookups that are kept around.
+     * @param file The file to open.
+     * @return The lookups over the file.
+     * @throws IOException If the file could not be mapped or is not a binary mappings file.
+     */
+    public static BinaryMappings open(File file) throws IOException {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinaryMappings(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a binary mappings file into memory, the file is not used afterwards.
+     * @param file The file to read.
+     * @return The lookups over the contents of the file.
+     * @throws IOException If the file could not be read or is not a binary mappings file.
+     */
+    public static BinaryMappings read(File file) throws IOException {
+        return new BinaryMappings(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Maps a class name from one namespace to another.
+     * Inner classes without a mapping of their own are mapped through their outer class.
+     * @param name The internal name of the class.
+     * @param from The namespace of the name.
+     * @param to The namespace to map to.
+     * @return The mapped name, or the name itself if neither the class nor its outer classes are known.
+     */
+    public String mapClass(String name, Namespace from, Namespace to) {
+        int idx = name.length();
+        do {
+            int clazz = findClass(from, idx == name.length() ? name : name.substring(0, idx));
+            if (clazz != -1) {
+                int mapped = className(clazz, to);
+                if (mapped != -1) {
+                    return getString(mapped) + name.substring(idx);
+                }
+            }
+        } while ((idx = name.lastIndexOf('$', idx - 1)) != -1);
+        return name;
+    }
+
+    /**
+     * Maps a field name from one namespace to another.
+     * Obfuscated classes can have several fields with the same name and different types,
+     * use {@link #mapField(String, String, String, Namespace, Namespace)} to tell them apart.
+     * @param owner The name of the class declaring the field, in the from namespace.
+     * @param name The name of the field.
+     * @param from The namespace of the names.
+     * @param to The namespace to map to.
+     * @return The mapped name, or null if the field is not known.
+     */
+    public String mapField(String owner, String name, Namespace from, Namespace to) {
+        return mapField(owner, name, null, from, to);
+    }
+
+    /**
+     * Maps a field name from one namespace to another.
+     * @param owner The name of the class declaring the field, in the from namespace.
+     * @param name The name of the field.
+     * @param descriptor The descriptor of the field in the from namespace, or null to match any type.
+     * @param from The namespace of the names.
+     * @param to The namespace to map to.
+     * @return The mapped name, or null if the field is not known.
+     */
+    public String mapField(String owner, String name, String descriptor, Namespace from, Namespace to) {
+        int clazz = findClass(from, owner);
+        if (clazz == -1) {
+            return null;
+        }
+        int member = findMember(from, name, descriptor, memberStart(clazz), classInt(clazz, 4));
+        return member == -1 ? null : nullableString(memberInt(member, to.ordinal()));
+    }
+
+    /**
+     * Maps a method name from one namespace to another.
+     * @param owner The name of the class declaring the method, in the from namespace.
+     * @param name The name of the method.
+     * @param descriptor The descriptor of the method, in the from namespace.
+     * @param from The namespace of the names.
+     * @param to The namespace to map to.
+     * @return The mapped name, or null if the method is not known.
+     */
+    public String mapMethod(String owner, String name, String descriptor, Namespace from, Namespace to) {
+        int clazz = findClass(from, owner);
+        if (clazz == -1) {
+            return null;
+        }
+        int member = findMember(from, name, descriptor, memberStart(clazz) + classInt(clazz, 4), classInt(clazz, 5));
+        return member == -1 ? null : nullableString(memberInt(member, to.ordinal()));
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * @return The comment lines of the spigot class mappings, including the leading #.
+     */
+    public List<String> getHeader() {
+        List<String> header = new ArrayList<>(headerCount);
+        for (int i = 0; i < headerCount; i++) {
+            header.add(getString(buffer.getInt(headerTable + 4 * i)));
+        }
+        return header;
+    }
+
+    /**
+     * Reads all mappings into a mapping tree.
+     * @return The mapping tree.
+     */
+    public MappingTree toTree() {
+        MappingTree.Builder tree = MappingTree.builder().header(getHeader());
+        for (int clazz = 0; clazz < classCount; clazz++) {
+            String obf = getString(className(clazz, Namespace.OBF));
+            tree.addClass(obf, nullableString(className(clazz, Namespace.SPIGOT)), nullableString(className(clazz, Namespace.MOJANG)));
+
+            int start = memberStart(clazz);
+            int fields = classInt(clazz, 4);
+            int methods = classInt(clazz, 5);
+            for (int member = start; member < start + fields + methods; member++) {
+                String[] values = new String[2 * NAMESPACES];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = nullableString(memberInt(member, i));
+                }
+                if (member < start + fields) {
+                    tree.addField(obf, values[0], values[1], values[2], values[3], values[4], values[5]);
+                } else {
+                    tree.addMethod(obf, values[0], values[1], values[2], values[3], values[4], values[5]);
+                }
+            }
+        }
+        return tree.build();
+    }
+
+    /**
+     * Binary searches the class index of a namespace.
+     * If several classes have the name, the one that came first in the tree is found.
+     * @return The class record, or -1 if there is no class with that name.
+     */
+    private int findClass(Namespace namespace, String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int index = indexPositions[namespace.ordinal()];
+        int low = 0;
+        int high = indexCounts[namespace.ordinal()] - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int clazz = buffer.getInt(index + 4 * mid);
+            int cmp = compareString(className(clazz, namespace), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                if (cmp == 0) {
+                    found = clazz;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds a member of a class. Members are sorted by their obfuscated name and descriptor,
+     * so obfuscated lookups are binary searches, lookups in other namespaces scan the members of the class.
+     * @param descriptor The descriptor to match, or null to match any.
+     * @return The member record, or -1 if there is no such member.
+     */
+    private int findMember(Namespace namespace, String name, String descriptor, int start, int count) {
+        byte[] nameKey = name.getBytes(StandardCharsets.UTF_8);
+        byte[] descKey = descriptor == null ? null : descriptor.getBytes(StandardCharsets.UTF_8);
+        int nameField = namespace.ordinal();
+        int descField = NAMESPACES + namespace.ordinal();
+
+        if (namespace != Namespace.OBF) {
+            for (int member = start; member < start + count; member++) {
+                if (compareString(memberInt(member, nameField), nameKey) == 0
+                        && (descKey == null || compareString(memberInt(member, descField), descKey) == 0)) {
+                    return member;
+                }
+            }
+            return -1;
+        }
+
+        int low = start;
+        int high = start + count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareString(memberInt(mid, nameField), nameKey);
+            if (cmp == 0 && descKey != null) {
+                cmp = compareString(memberInt(mid, descField), descKey);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                if (cmp == 0) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private int className(int clazz, Namespace namespace) {
+        return classInt(clazz, namespace.ordinal());
+    }
+
+    private int memberStart(int clazz) {
+        return classInt(clazz, 3);
+    }
+
+    private int classInt(int clazz, int field) {
+        return buffer.getInt(classTable + BinaryMappingsWriter.CLASS_RECORD_SIZE * clazz + 4 * field);
+    }
+
+    private int memberInt(int member, int field) {
+        return buffer.getInt(memberTable + BinaryMappingsWriter.MEMBER_RECORD_SIZE * member + 4 * field);
+    }
+
+    /**
+     * Compares a pooled string with UTF-8 bytes, without decoding the pooled string.
+     * A missing string sorts before everything else.
+     */
+    private int compareString(int id, byte[] key) {
+        if (id == -1) {
+            return -1;
+        }
+        int offset = buffer.getInt(stringOffsets + 4 * id);
+        int length = buffer.getInt(offset);
+        offset += 4;
+
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String nullableString(int id) {
+        return id == -1 ? null : getString(id);
+    }
+
+    private String getString(int id) {
+        if (id < 0 || id >= stringCount) {
+            throw new IndexOutOfBoundsException("Unknown string id " + id);
+        }
+        int offset = buffer.getInt(stringOffsets + 4 * id);
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
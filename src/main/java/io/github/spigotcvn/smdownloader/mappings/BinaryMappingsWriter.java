@@ -0,0 +1,212 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.ClassMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.MemberMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link MappingTree} in the binary format read by {@link BinaryMappings}.
+ * <p>
+ * All numbers are big endian ints, all positions are absolute offsets into the file.
+ * The file starts with a fixed size header:
+ * <pre>
+ * magic, version,
+ * string count, position of the string offsets,
+ * class count, position of the class records,
+ * for every namespace: entry count and position of its class index,
+ * member count, position of the member records,
+ * header line count, position of the header line string ids
+ * </pre>
+ * Strings are stored once in a pool, as their UTF-8 length followed by their UTF-8 bytes,
+ * everything else refers to them by id, -1 means no string.
+ * A class record holds the string ids of its obf, spigot and mojang name, its first member and its field and method count.
+ * The class index of a namespace lists the classes with a name in that namespace, sorted by the UTF-8 bytes of that name.
+ * Members of a class are stored together, first the fields and then the methods, both sorted by obfuscated
+ * name and descriptor, each as the string ids of their three names followed by their three descriptors.
+ */
+public final class BinaryMappingsWriter {
+    static final int MAGIC = 0x534D4150; // "SMAP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * (8 + 2 * Namespace.values().length + 2);
+    static final int CLASS_RECORD_SIZE = 4 * 6;
+    static final int MEMBER_RECORD_SIZE = 4 * 6;
+
+    private BinaryMappingsWriter() {
+    }
+
+    /**
+     * Writes a mapping tree to a binary mappings file.
+     * @param tree The mappings to write.
+     * @param out The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(MappingTree tree, File out) throws IOException {
+        Namespace[] namespaces = Namespace.values();
+        StringPool pool = new StringPool();
+
+        List<ClassMapping> classes = tree.getClasses();
+        List<MemberMapping> members = new ArrayList<>();
+        int[][] classRecords = new int[classes.size()][];
+        for (int i = 0; i < classes.size(); i++) {
+            ClassMapping clazz = classes.get(i);
+            List<MemberMapping> fields = new ArrayList<>(clazz.getFields());
+            List<MemberMapping> methods = new ArrayList<>(clazz.getMethods());
+            Comparator<MemberMapping> order = Comparator
+                    .comparing((MemberMapping member) -> utf8(member.getName(Namespace.OBF)), BinaryMappingsWriter::compare)
+                    .thenComparing(member -> utf8(member.getDescriptor(Namespace.OBF)), BinaryMappingsWriter::compare);
+            fields.sort(order);
+            methods.sort(order);
+
+            classRecords[i] = new int[]{
+                    pool.id(clazz.getName(Namespace.OBF)),
+                    pool.id(clazz.getName(Namespace.SPIGOT)),
+                    pool.id(clazz.getName(Namespace.MOJANG)),
+                    members.size(),
+                    fields.size(),
+                    methods.size()
+            };
+            members.addAll(fields);
+            members.addAll(methods);
+        }
+
+        List<List<Integer>> indices = new ArrayList<>();
+        for (Namespace namespace : namespaces) {
+            List<Integer> index = new ArrayList<>();
+            for (int i = 0; i < classes.size(); i++) {
+                if (classes.get(i).getName(namespace) != null) {
+                    index.add(i);
+                }
+            }
+            index.sort(Comparator.comparing((Integer i) -> utf8(classes.get(i).getName(namespace)), BinaryMappingsWriter::compare));
+            indices.add(index);
+        }
+
+        int[][] memberRecords = new int[members.size()][];
+        for (int i = 0; i < members.size(); i++) {
+            MemberMapping member = members.get(i);
+            memberRecords[i] = new int[6];
+            for (Namespace namespace : namespaces) {
+                memberRecords[i][namespace.ordinal()] = pool.id(member.getName(namespace));
+                memberRecords[i][namespaces.length + namespace.ordinal()] = pool.id(member.getDescriptor(namespace));
+            }
+        }
+
+        int[] headerLines = new int[tree.getHeader().size()];
+        for (int i = 0; i < headerLines.length; i++) {
+            headerLines[i] = pool.id(tree.getHeader().get(i));
+        }
+
+        // lay out the sections behind each other
+        int stringOffsets = HEADER_SIZE;
+        int stringData = stringOffsets + 4 * pool.strings.size();
+        int classTable = stringData + pool.size;
+        int[] indexPositions = new int[namespaces.length];
+        int position = classTable + CLASS_RECORD_SIZE * classes.size();
+        for (int i = 0; i < namespaces.length; i++) {
+            indexPositions[i] = position;
+            position += 4 * indices.get(i).size();
+        }
+        int memberTable = position;
+        int headerTable = memberTable + MEMBER_RECORD_SIZE * members.size();
+
+        try (AtomicFileOutputStream target = new AtomicFileOutputStream(out);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(target))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(pool.strings.size());
+            output.writeInt(stringOffsets);
+            output.writeInt(classes.size());
+            output.writeInt(classTable);
+            for (int i = 0; i < namespaces.length; i++) {
+                output.writeInt(indices.get(i).size());
+                output.writeInt(indexPositions[i]);
+            }
+            output.writeInt(members.size());
+            output.writeInt(memberTable);
+            output.writeInt(headerLines.length);
+            output.writeInt(headerTable);
+
+            int offset = stringData;
+            for (byte[] string : pool.strings) {
+                output.writeInt(offset);
+                offset += 4 + string.length;
+            }
+            for (byte[] string : pool.strings) {
+                output.writeInt(string.length);
+                output.write(string);
+            }
+
+            for (int[] record : classRecords) {
+                writeInts(output, record);
+            }
+            for (List<Integer> index : indices) {
+                for (int i : index) {
+                    output.writeInt(i);
+                }
+            }
+            for (int[] record : memberRecords) {
+                writeInts(output, record);
+            }
+            writeInts(output, headerLines);
+            output.flush();
+            target.commit();
+        }
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    private static byte[] utf8(String string) {
+        return string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares UTF-8 bytes as unsigned values, which sorts like the code points of the strings.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static class StringPool {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int size;
+
+        int id(String string) {
+            if (string == null) {
+                return -1;
+            }
+            Integer id = ids.get(string);
+            if (id == null) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(bytes);
+                size += 4 + bytes.length;
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Scans UTF-8 text line by line on the byte level, from a buffer in memory or from a file.
+ * Lines are not decoded, callers look at the bytes of the current line and only decode the slices they keep.
+ * Lines end at \n, \r or \r\n, like with {@link java.io.BufferedReader#readLine()}.
+ * Files are read through a channel into a direct buffer that is reused for every line, so they are never mapped
+ * and can be replaced or deleted as soon as the reader is closed. The buffer grows for lines longer than it.
+ * Indices are positions in the buffer and are only valid until the next line is read,
+ * {@link #offset(int)} turns them into positions in the file.
+ */
+class ByteLineReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // null if the whole text is already in the buffer
+    private final FileChannel channel;
+    // how many bytes of the channel are left to be read into the buffer
+    private long remaining;
+    private ByteBuffer buffer;
+    // used for bulk reads, so the position of the buffer is never touched
+    private ByteBuffer view;
+    private int limit;
+    // the position in the file that index 0 of the buffer stands for
+    private long fileOffset;
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+    private byte[] scratch = new byte[128];
+
+    ByteLineReader(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+        this.view = buffer.duplicate();
+        this.limit = buffer.limit();
+        this.position = buffer.position();
+    }
+
+    private ByteLineReader(FileChannel channel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.remaining = Math.max(0, Math.min(end, channel.size()) - start);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.view = buffer.duplicate();
+        this.fileOffset = start;
+        channel.position(start);
+    }
+
+    /**
+     * Opens a file for reading.
+     * @param file The file to read.
+     * @return The reader, positioned before the first line.
+     * @throws IOException If the file could not be opened.
+     */
+    static ByteLineReader open(File file) throws IOException {
+        return open(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a range of a file for reading, the first line starts at the start of the range.
+     * @param file The file to read.
+     * @param start The position in the file to start at.
+     * @param end The position in the file to stop at, it is capped at the size of the file.
+     * @return The reader, positioned before the first line.
+     * @throws IOException If the file could not be opened.
+     */
+    static ByteLineReader open(File file, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ByteLineReader(channel, start, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next line.
+     * @return False if there are no more lines.
+     * @throws IOException If the file could not be read.
+     */
+    boolean next() throws IOException {
+        lineStart = position;
+        if (lineStart >= limit && !fill()) {
+            return false;
+        }
+        int index = lineStart;
+        while (true) {
+            while (index < limit) {
+                byte b = buffer.get(index);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                index++;
+            }
+            int read = index - lineStart;
+            if (index < limit || !fill()) {
+                break;
+            }
+            index = lineStart + read;
+        }
+        lineEnd = index;
+        if (index < limit && buffer.get(index) == '\r') {
+            if (index + 1 == limit) {
+                int read = index - lineStart;
+                if (fill()) {
+                    index = lineStart + read;
+                    lineEnd = index;
+                }
+            }
+            if (index + 1 < limit && buffer.get(index + 1) == '\n') {
+                index++;
+            }
+        }
+        position = index + 1;
+        return true;
+    }
+
+    /**
+     * Reads more of the file into the buffer. The current line is moved to the start of the buffer first,
+     * which changes the indices of its bytes, and the buffer grows if the line already fills it.
+     * @return False if there is nothing more to read.
+     */
+    private boolean fill() throws IOException {
+        if (channel == null || remaining == 0) {
+            return false;
+        }
+
+        if (lineStart > 0) {
+            buffer.limit(limit).position(lineStart);
+            buffer.compact();
+            limit -= lineStart;
+            fileOffset += lineStart;
+            position -= lineStart;
+            lineStart = 0;
+        } else if (limit == buffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            buffer.limit(limit).position(0);
+            grown.put(buffer);
+            buffer = grown;
+            view = buffer.duplicate();
+        }
+
+        buffer.limit((int) Math.min(buffer.capacity(), limit + remaining)).position(limit);
+        int read = channel.read(buffer);
+        buffer.limit(buffer.capacity());
+        if (read <= 0) {
+            // the file got shorter while it was read
+            remaining = 0;
+            return false;
+        }
+        limit += read;
+        remaining -= read;
+        return true;
+    }
+
+    /**
+     * @return The position of the first byte of the current line.
+     */
+    int start() {
+        return lineStart;
+    }
+
+    /**
+     * @return The position right after the last byte of the current line, without the line break.
+     */
+    int end() {
+        return lineEnd;
+    }
+
+    /**
+     * @return The position in the file of an index.
+     */
+    long offset(int index) {
+        return fileOffset + index;
+    }
+
+    byte byteAt(int index) {
+        return buffer.get(index);
+    }
+
+    /**
+     * @return The position of the byte in the range, or -1 if it is not in it.
+     */
+    int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param ascii The ASCII text to look for.
+     * @return The position of the text in the range, or -1 if it is not in it.
+     */
+    int indexOf(String ascii, int from, int to) {
+        int last = to - ascii.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < ascii.length(); j++) {
+                if (buffer.get(i + j) != ascii.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether the two ranges hold the same bytes, and so decode to equal strings.
+     */
+    boolean rangeEquals(int from, int to, int otherFrom, int otherTo) {
+        if (to - from != otherTo - otherFrom) {
+            return false;
+        }
+        for (int i = 0; i < to - from; i++) {
+            if (buffer.get(from + i) != buffer.get(otherFrom + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a range of the current line.
+     * @return The decoded string.
+     */
+    String decode(int from, int to) {
+        int length = to - from;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        view.position(from);
+        view.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
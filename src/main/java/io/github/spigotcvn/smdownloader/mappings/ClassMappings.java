@@ -0,0 +1,189 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.util.Arrays;
+
+/**
+ * A compact, bidirectional class name mapping, used by {@link MapUtil} instead of a {@code BiMap<String, String>}.
+ * Names are stored as ids of a {@link SymbolTable}. The ids are dense, so both directions are int arrays indexed by id,
+ * and a mapping costs a few ints instead of a map entry, no matter how many names the mappings share with others.
+ * Classes keep the order they were first put in, like the entries of a {@code HashBiMap}.
+ * Lookups are thread safe as long as no classes are put meanwhile.
+ */
+class ClassMappings {
+    private static final int MISSING = -1;
+
+    private final SymbolTable symbols;
+    private final Table table;
+    // whether this is the view from the mapped names back to the original names
+    private final boolean inverted;
+    private final ClassMappings inverse;
+
+    /**
+     * Creates new empty class mappings.
+     * @param symbols The symbol table to intern the names into, can be shared with other mappings.
+     */
+    ClassMappings(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.table = new Table();
+        this.inverted = false;
+        this.inverse = new ClassMappings(this);
+    }
+
+    private ClassMappings(ClassMappings inverse) {
+        this.symbols = inverse.symbols;
+        this.table = inverse.table;
+        this.inverted = true;
+        this.inverse = inverse;
+    }
+
+    /**
+     * Maps a class to a new name, replacing its previous mapping.
+     * @param from The original name of the class.
+     * @param to The mapped name of the class.
+     * @throws IllegalArgumentException If another class is already mapped to the same name.
+     */
+    void put(String from, String to) {
+        if (inverted) {
+            throw new UnsupportedOperationException("The inverse of class mappings can not be changed");
+        }
+        int fromId = symbols.intern(from);
+        int toId = symbols.intern(to);
+        table.ensureCapacity(Math.max(fromId, toId) + 1);
+
+        int existing = table.backward[toId];
+        if (existing != MISSING && existing != fromId) {
+            throw new IllegalArgumentException("value already present: " + to);
+        }
+
+        int previous = table.forward[fromId];
+        if (previous == MISSING) {
+            table.add(fromId);
+        } else if (previous != toId) {
+            // the old name is no longer mapped to anything
+            table.backward[previous] = MISSING;
+        }
+        table.forward[fromId] = toId;
+        table.backward[toId] = fromId;
+    }
+
+    /**
+     * @param from The original name of a class.
+     * @return The mapped name of the class, or null if it is not mapped.
+     */
+    String get(String from) {
+        return lookup(symbols.find(from));
+    }
+
+    /**
+     * Looks up a range of chars without creating a string for it.
+     * @param chars The chars holding the original name of a class.
+     * @param start The index of the first char of the name.
+     * @param end The index after the last char of the name.
+     * @return The mapped name of the class, or null if it is not mapped.
+     */
+    String get(CharSequence chars, int start, int end) {
+        return lookup(symbols.find(chars, start, end));
+    }
+
+    boolean containsKey(String from) {
+        return get(from) != null;
+    }
+
+    /**
+     * Maps a class name, falling back to the mapping of its outer classes for unmapped inner classes.
+     * This behaves exactly like {@link MapUtil#deobfClass(String, java.util.Map)}.
+     * @param name The original name of the class.
+     * @return The mapped name, or if neither the class nor its outer classes are mapped,
+     *         the name of its outermost class without the inner class names.
+     */
+    String map(String name) {
+        String mapped = get(name);
+        if (mapped != null) {
+            return mapped;
+        }
+
+        int idx = name.length();
+        while ((idx = name.lastIndexOf('$', idx - 1)) != -1) {
+            mapped = get(name, 0, idx);
+            if (mapped != null) {
+                return mapped + name.substring(idx);
+            }
+        }
+        int outer = name.indexOf('$');
+        return outer == -1 ? name : name.substring(0, outer);
+    }
+
+    /**
+     * @return A view from the mapped names back to the original names, it can not be changed.
+     */
+    ClassMappings inverse() {
+        return inverse;
+    }
+
+    /**
+     * @return The amount of mapped classes.
+     */
+    int size() {
+        return table.size;
+    }
+
+    /**
+     * @param index The position of the class in the order the classes were first put.
+     * @return The original name of the class.
+     */
+    String getOriginal(int index) {
+        int id = table.order[index];
+        return symbols.get(inverted ? table.forward[id] : id);
+    }
+
+    /**
+     * @param index The position of the class in the order the classes were first put.
+     * @return The mapped name of the class.
+     */
+    String getMapped(int index) {
+        int id = table.order[index];
+        return symbols.get(inverted ? id : table.forward[id]);
+    }
+
+    private String lookup(int id) {
+        int[] ids = inverted ? table.backward : table.forward;
+        if (id == SymbolTable.NONE || id >= ids.length || ids[id] == MISSING) {
+            return null;
+        }
+        return symbols.get(ids[id]);
+    }
+
+    /**
+     * Both directions of the mappings, shared with the inverse view.
+     */
+    private static class Table {
+        // the mapped id of every original id and the other way around, MISSING if there is none
+        private int[] forward = new int[0];
+        private int[] backward = new int[0];
+        // the original ids in the order they were first put
+        private int[] order = new int[16];
+        private int size;
+
+        void ensureCapacity(int capacity) {
+            if (capacity <= forward.length) {
+                return;
+            }
+            int length = Math.max(capacity, forward.length + (forward.length >> 1));
+            forward = grow(forward, length);
+            backward = grow(backward, length);
+        }
+
+        void add(int id) {
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size++] = id;
+        }
+
+        private static int[] grow(int[] ids, int length) {
+            int[] grown = Arrays.copyOf(ids, length);
+            Arrays.fill(grown, ids.length, length, MISSING);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.ClassMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.FieldMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.MethodMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a {@link MappingTree} as csrg files.
+ * The member and field mappings have the same bytes as the ones generated by {@link MapUtil} for the same version.
+ * Combined mappings keep the order of the spigot class mappings, which a tree does not know,
+ * use {@link MapUtil#makeCombinedMaps(File, MappingTree)} for them.
+ * Lines are sorted with a {@link SortedLineWriter}, so large trees are spilled to disk instead of being collected in memory.
+ */
+public final class CsrgWriter {
+    private CsrgWriter() {
+    }
+
+    /**
+     * Writes the member mappings, from obfuscated member names in spigot classes to spigot member names.
+     * @param tree The mappings to write.
+     * @param out The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void writeMembers(MappingTree tree, File out) throws IOException {
+        try (SortedLineWriter lines = new SortedLineWriter(out)) {
+            lines.addAll(tree.getHeader());
+            for (ClassMapping clazz : tree.getClasses()) {
+                String owner = clazz.getName(Namespace.SPIGOT);
+                for (FieldMapping field : clazz.getFields()) {
+                    lines.add(owner + " " + field.getName(Namespace.OBF) + " " + field.getName(Namespace.SPIGOT));
+                }
+                for (MethodMapping method : clazz.getMethods()) {
+                    lines.add(owner + " " + method.getName(Namespace.OBF) + " " + method.getDescriptor(Namespace.SPIGOT)
+                            + " " + method.getName(Namespace.SPIGOT));
+                }
+            }
+            lines.finish();
+        }
+    }
+
+    /**
+     * Writes the field mappings, like the member mappings but without methods.
+     * Obfuscated names that are java keywords get a trailing underscore.
+     * @param tree The mappings to write.
+     * @param out The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void writeFields(MappingTree tree, File out) throws IOException {
+        try (SortedLineWriter lines = new SortedLineWriter(out)) {
+            lines.addAll(tree.getHeader());
+            for (ClassMapping clazz : tree.getClasses()) {
+                String owner = clazz.getName(Namespace.SPIGOT);
+                for (FieldMapping field : clazz.getFields()) {
+                    String obfName = field.getName(Namespace.OBF);
+                    if (obfName.equals("if") || obfName.equals("do")) {
+                        obfName += "_";
+                    }
+                    lines.add(owner + " " + obfName + " " + field.getName(Namespace.SPIGOT));
+                }
+            }
+            lines.finish();
+        }
+    }
+}
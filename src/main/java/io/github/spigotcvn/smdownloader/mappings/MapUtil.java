@@ -7,145 +7,705 @@ package io.github.spigotcvn.smdownloader.mappings;
  * The original file is licensed under the GNU General Public License v3.0.
  */
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class MapUtil {
 
-    private static final Pattern MEMBER_PATTERN = Pattern.compile("(?:\\d+:\\d+:)?(.*?) (.*?) \\-> (.*)");
-    //
     private List<String> header = new ArrayList<>();
-    private final BiMap<String, String> obf2Buk = HashBiMap.create();
-    private final BiMap<String, String> moj2Obf = HashBiMap.create();
+    // both class mappings intern their names into one table, the obfuscated names they share are only kept once
+    private final SymbolTable symbols = new SymbolTable();
+    private final ClassMappings obf2Buk = new ClassMappings(symbols);
+    private final ClassMappings moj2Obf = new ClassMappings(symbols);
+    // resolved names of deobfClass, including inner classes that are not mapped themselves,
+    // concurrent since chunks of the mojang mappings can be converted in parallel
+    private final Map<String, String> obf2BukCache = new ConcurrentHashMap<>();
+    private final Map<String, String> buk2ObfCache = new ConcurrentHashMap<>();
+    private final Map<String, String> moj2ObfCache = new ConcurrentHashMap<>();
+    private final LongAdder resolveHits = new LongAdder();
+    private final LongAdder resolveMisses = new LongAdder();
+    private long sortMemoryLimit = SortedLineWriter.DEFAULT_MEMORY_LIMIT;
+    private int parallelism = 1;
 
     public void loadBuk(File bukClasses) throws IOException {
-        for (String line : Files.readAllLines(bukClasses.toPath())) {
-            if (line.startsWith("#")) {
-                header.add(line);
+        try (ByteLineReader lines = ByteLineReader.open(bukClasses)) {
+            loadBuk(lines);
+        }
+    }
+
+    public void loadBuk(MappingFile bukClasses) throws IOException {
+        try (ByteLineReader lines = bukClasses.openLines()) {
+            loadBuk(lines);
+        }
+    }
+
+    /**
+     * Reads the class mappings on the byte level, only the header lines and the two names of a mapping are decoded.
+     * A line is a mapping if {@code line.split(" ")} would give exactly two parts,
+     * so the second name must not be empty and can only be followed by spaces.
+     */
+    private void loadBuk(ByteLineReader lines) throws IOException {
+        while (lines.next()) {
+            int start = lines.start();
+            int end = lines.end();
+            if (start < end && lines.byteAt(start) == '#') {
+                header.add(lines.decode(start, end));
                 continue;
             }
 
-            String[] split = line.split(" ");
-            if (split.length == 2) {
-                obf2Buk.put(split[0], split[1]);
+            int space = lines.indexOf(' ', start, end);
+            if (space == -1) {
+                continue;
+            }
+            int nameEnd = lines.indexOf(' ', space + 1, end);
+            if (nameEnd == -1) {
+                nameEnd = end;
+            }
+            if (nameEnd == space + 1 || !onlySpaces(lines, nameEnd, end)) {
+                continue;
+            }
+            obf2Buk.put(lines.decode(start, space), lines.decode(space + 1, nameEnd));
+        }
+        obf2BukCache.clear();
+        buk2ObfCache.clear();
+    }
+
+    private static boolean onlySpaces(ByteLineReader lines, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (lines.byteAt(i) != ' ') {
+                return false;
             }
         }
+        return true;
     }
 
     public void makeFieldMaps(File mojIn, File fields, boolean includeMethods) throws IOException {
-        if (includeMethods) {
-            for (String line : Files.readAllLines(mojIn.toPath())) {
-                if (line.startsWith("#")) {
-                    continue;
-                }
+        try (SortedLineWriter outFields = new SortedLineWriter(fields, sortMemoryLimit)) {
+            outFields.addAll(header);
+            if (includeMethods) {
+                readFieldMaps(mojIn, outFields, null);
+            } else {
+                readFieldMaps(mojIn, null, outFields);
+            }
+            outFields.finish();
+        }
+    }
 
-                if (line.endsWith(":")) {
-                    String[] parts = line.split(" -> ");
-                    String orig = parts[0].replace('.', '/');
-                    String obf = parts[1].substring(0, parts[1].length() - 1).replace('.', '/');
+    /**
+     * Generates member and field mappings together, reading the mojang mappings only once.
+     * The output is the same as calling {@link #makeFieldMaps(File, File, boolean)} with and without methods.
+     * The member lines are not kept, use {@link #makeMemberFieldAndCombinedMaps(File, File, File, File)}
+     * to stream them into combined mappings as well.
+     * @param mojIn The mojang mappings.
+     * @param members The file to write the member mappings to.
+     * @param fields The file to write the field mappings to.
+     * @throws IOException If a file could not be read or written.
+     */
+    public void makeMemberAndFieldMaps(File mojIn, File members, File fields) throws IOException {
+        try (SortedLineWriter outMembers = new SortedLineWriter(members, sortMemoryLimit);
+             SortedLineWriter outFields = new SortedLineWriter(fields, sortMemoryLimit)) {
+            outMembers.addAll(header);
+            outFields.addAll(header);
+            readFieldMaps(mojIn, outMembers, outFields);
+
+            outMembers.finish();
+            outFields.finish();
+        }
+    }
 
-                    moj2Obf.put(orig, obf);
-                }
+    /**
+     * Generates member, field and combined mappings together, reading the mojang mappings only once.
+     * The member lines are never all held in memory,
+     * they are passed on to the combined mappings while the member mappings are written.
+     * The output is the same as calling {@link #makeFieldMaps(File, File, boolean)} with and without methods
+     * and then {@link #makeCombinedMaps(File, File...)} with the member mappings.
+     * @param mojIn The mojang mappings.
+     * @param members The file to write the member mappings to.
+     * @param fields The file to write the field mappings to.
+     * @param combined The file to write the combined mappings to.
+     * @throws IOException If a file could not be read or written.
+     */
+    public void makeMemberFieldAndCombinedMaps(File mojIn, File members, File fields, File combined) throws IOException {
+        try (SortedLineWriter outMembers = new SortedLineWriter(members, sortMemoryLimit);
+             SortedLineWriter outFields = new SortedLineWriter(fields, sortMemoryLimit)) {
+            outMembers.addAll(header);
+            outFields.addAll(header);
+            readFieldMaps(mojIn, outMembers, outFields);
+
+            outFields.finish();
+            try (CombinedWriter outCombined = new CombinedWriter(combined)) {
+                outMembers.finish(outCombined);
+                outCombined.commit();
             }
         }
+    }
 
-        List<String> outFields = new ArrayList<>(header);
+    /**
+     * Sets how many bytes of output lines are sorted in memory before they are spilled to disk.
+     * @param sortMemoryLimit The limit, {@link SortedLineWriter#DEFAULT_MEMORY_LIMIT} by default.
+     */
+    public void setSortMemoryLimit(long sortMemoryLimit) {
+        this.sortMemoryLimit = sortMemoryLimit;
+    }
 
-        String currentClass = null;
-        outer:
-        for (String line : Files.readAllLines(mojIn.toPath())) {
-            if (line.startsWith("#")) {
-                continue;
+    /**
+     * Sets how many threads read the mojang mappings when generating member and field mappings.
+     * With more than one thread the mojang mappings are split into byte ranges of class blocks,
+     * which are read and converted on a fork join pool. The output is the same.
+     * @param parallelism The amount of threads, 1 by default, which reads the mappings on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Converts the mojang mappings into csrg lines, unsorted.
+     * @param outMembers The writer to add fields and methods to, or null.
+     * @param outFields The writer to add fields to, with reserved names escaped, or null.
+     */
+    private void readFieldMaps(File mojIn, SortedLineWriter outMembers, SortedLineWriter outFields) throws IOException {
+        if (parallelism > 1) {
+            readFieldMapsParallel(mojIn, outMembers, outFields);
+            return;
+        }
+
+        FieldMapsVisitor visitor = new FieldMapsVisitor(outMembers != null,
+                outMembers == null ? null : line -> addLine(outMembers, line),
+                outFields == null ? null : line -> addLine(outFields, line));
+        try {
+            ProguardReader.read(mojIn, visitor);
+            if (outMembers != null) {
+                // the mojang class mappings changed, and are only resolved from here on
+                moj2ObfCache.clear();
             }
-            line = line.trim();
+            visitor.convertMethods();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            if (line.endsWith(":")) {
-                currentClass = null;
+    /**
+     * Converts the mojang mappings like {@link #readFieldMaps(File, SortedLineWriter, SortedLineWriter)},
+     * but on a fork join pool. The file is split into byte ranges of whole class blocks, which every task reads
+     * from the file on its own, so the file is never held in memory as a whole.
+     * The class headers of all ranges are read first, so the mojang class mappings
+     * are complete and only read while the ranges are converted.
+     * The lines of the ranges are added in the order of the ranges, so the result does not depend on scheduling.
+     */
+    private void readFieldMapsParallel(File mojIn, SortedLineWriter outMembers, SortedLineWriter outFields) throws IOException {
+        long[] bounds = ProguardReader.splitClassBlocks(mojIn, parallelism * 4);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            if (outMembers != null) {
+                List<Callable<List<String[]>>> classTasks = new ArrayList<>();
+                for (int i = 0; i < bounds.length - 1; i++) {
+                    long start = bounds[i];
+                    long end = bounds[i + 1];
+                    classTasks.add(() -> {
+                        List<String[]> classes = new ArrayList<>();
+                        try (ByteLineReader lines = ByteLineReader.open(mojIn, start, end)) {
+                            ProguardReader.readClasses(lines, new ProguardVisitor() {
+                                @Override
+                                public void visitClass(String mojName, String obfName) {
+                                    classes.add(new String[]{mojName, obfName});
+                                }
+
+                                @Override
+                                public void visitField(String type, String mojName, String obfName) {
+                                }
+
+                                @Override
+                                public void visitMethod(String returnType, String mojName, String args, String obfName) {
+                                }
+                            });
+                        }
+                        return classes;
+                    });
+                }
+                for (List<String[]> classes : invokeAll(pool, classTasks)) {
+                    for (String[] clazz : classes) {
+                        moj2Obf.put(clazz[0], clazz[1]);
+                    }
+                }
+                moj2ObfCache.clear();
+            }
 
-                String[] parts = line.split(" -> ");
-                String orig = parts[0].replace('.', '/');
-                String obf = parts[1].substring(0, parts[1].length() - 1).replace('.', '/');
+            List<Callable<List<List<String>>>> chunkTasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                chunkTasks.add(() -> {
+                    List<String> members = new ArrayList<>();
+                    List<String> fields = new ArrayList<>();
+                    FieldMapsVisitor visitor = new FieldMapsVisitor(false,
+                            outMembers == null ? null : members::add,
+                            outFields == null ? null : fields::add);
+                    try (ByteLineReader lines = ByteLineReader.open(mojIn, start, end)) {
+                        ProguardReader.read(lines, visitor);
+                    }
+                    visitor.convertMethods();
+                    return Arrays.asList(members, fields);
+                });
+            }
+            for (List<List<String>> lines : invokeAll(pool, chunkTasks)) {
+                if (outMembers != null) {
+                    outMembers.addAll(lines.get(0));
+                }
+                if (outFields != null) {
+                    outFields.addAll(lines.get(1));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                String buk = deobfClass(obf, obf2Buk);
-                if (buk == null) {
-                    continue;
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the mojang mappings");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
                 }
+                throw new IOException(cause);
+            }
+        }
+        return results;
+    }
 
-                currentClass = buk;
-            } else if (currentClass != null) {
-                Matcher matcher = MEMBER_PATTERN.matcher(line);
-                matcher.find();
+    /**
+     * Converts the entries of the mojang mappings into csrg lines.
+     * Methods are converted as soon as they are visited if the mojang class mappings are already complete,
+     * or if every class in their descriptor was already declared. The others reference classes that can still be declared
+     * further down, they are kept until {@link #convertMethods()} is called after all entries were read.
+     */
+    private class FieldMapsVisitor implements ProguardVisitor {
+        private final boolean registerClasses;
+        private final Consumer<String> members;
+        private final Consumer<String> fields;
+        private final List<String[]> methods = new ArrayList<>();
+        private String currentClass;
+
+        /**
+         * @param registerClasses Whether to add the classes to the mojang class mappings,
+         *                        the caller has to clear their cache once all classes were visited.
+         * @param members Receives fields and methods, or null.
+         * @param fields Receives fields with reserved names escaped, or null.
+         */
+        FieldMapsVisitor(boolean registerClasses, Consumer<String> members, Consumer<String> fields) {
+            this.registerClasses = registerClasses;
+            this.members = members;
+            this.fields = fields;
+        }
 
-                String obf = matcher.group(3);
-                String nameDesc = matcher.group(2);
-                if (!nameDesc.contains("(")) {
-                    if (nameDesc.equals(obf) || nameDesc.contains("$")) {
-                        continue;
-                    }
-                    if (!includeMethods && (obf.equals("if") || obf.equals("do"))) {
-                        obf += "_";
-                    }
+        @Override
+        public boolean skipsUnrenamedMembers() {
+            return true;
+        }
 
-                    outFields.add(currentClass + " " + obf + " " + nameDesc);
-                } else if (includeMethods) {
-                    String sig = csrgDesc(moj2Obf, obf2Buk, nameDesc.substring(nameDesc.indexOf('(')), matcher.group(1));
-                    String mojName = nameDesc.substring(0, nameDesc.indexOf('('));
+        @Override
+        public void visitClass(String mojName, String obfName) {
+            if (registerClasses) {
+                moj2Obf.put(mojName, obfName);
+            }
+            currentClass = resolveClass(obfName, obf2Buk, obf2BukCache);
+        }
 
-                    if (obf.equals(mojName) || mojName.contains("$") || obf.equals("<init>") || obf.equals("<clinit>")) {
-                        continue;
-                    }
-                    outFields.add(currentClass + " " + obf + " " + sig + " " + mojName);
+        @Override
+        public void visitField(String type, String mojName, String obfName) {
+            if (currentClass == null || mojName.equals(obfName) || mojName.contains("$")) {
+                return;
+            }
+
+            if (members != null) {
+                members.accept(currentClass + " " + obfName + " " + mojName);
+            }
+            if (fields != null) {
+                if (obfName.equals("if") || obfName.equals("do")) {
+                    obfName += "_";
+                }
+                fields.accept(currentClass + " " + obfName + " " + mojName);
+            }
+        }
+
+        @Override
+        public void visitMethod(String returnType, String mojName, String args, String obfName) {
+            if (currentClass == null || members == null) {
+                return;
+            }
+            if (obfName.equals(mojName) || mojName.contains("$") || obfName.equals("<init>") || obfName.equals("<clinit>")) {
+                return;
+            }
+            if (!registerClasses || isDeclared(returnType) && areDeclared(args)) {
+                members.accept(currentClass + " " + obfName + " " + csrgDesc(args, returnType) + " " + mojName);
+            } else {
+                methods.add(new String[]{currentClass, obfName, args, returnType, mojName});
+            }
+        }
+
+        void convertMethods() {
+            for (String[] method : methods) {
+                String sig = csrgDesc(method[2], method[3]);
+                members.accept(method[0] + " " + method[1] + " " + sig + " " + method[4]);
+            }
+            methods.clear();
+        }
+
+        /**
+         * @return Whether every type in a mojang argument list already resolves to its final obfuscated name.
+         */
+        private boolean areDeclared(String args) {
+            int start = 1;
+            while (start < args.length() - 1) {
+                int end = args.indexOf(',', start);
+                if (end == -1) {
+                    end = args.length() - 1;
+                }
+                if (!isDeclared(args.substring(start, end))) {
+                    return false;
                 }
+                start = end + 1;
             }
+            return true;
         }
 
-        Collections.sort(outFields);
-        Files.write(fields.toPath(), outFields);
+        /**
+         * @return Whether a mojang type is primitive or a class that was already visited, so it resolves the same way
+         *         after all classes were visited. Inner classes of visited classes can still be declared themselves.
+         */
+        private boolean isDeclared(String type) {
+            int end = type.length();
+            while (type.startsWith("[]", end - 2)) {
+                end -= 2;
+            }
+            String element = type.substring(0, end);
+            switch (element) {
+                case "byte":
+                case "char":
+                case "double":
+                case "float":
+                case "int":
+                case "long":
+                case "short":
+                case "boolean":
+                case "void":
+                    return true;
+                default:
+                    return moj2Obf.containsKey(element.replace('.', '/'));
+            }
+        }
     }
 
-    public void makeCombinedMaps(File out, File... members) throws IOException {
-        List<String> combined = new ArrayList<>(header);
+    /**
+     * Reads the mojang mappings into a mapping tree, without writing any files.
+     * The tree contains the same fields and methods as the member mappings generated by
+     * {@link #makeMemberAndFieldMaps(File, File, File)}, together with their obfuscated and mojang names.
+     * @param mojIn The mojang mappings.
+     * @return The mapping tree.
+     * @throws IOException If the mojang mappings could not be read.
+     */
+    public MappingTree makeMappingTree(File mojIn) throws IOException {
+        MappingTree.Builder tree = MappingTree.builder().header(header);
+        for (int i = 0; i < obf2Buk.size(); i++) {
+            tree.addClass(obf2Buk.getOriginal(i), obf2Buk.getMapped(i), null);
+        }
+        // descriptors can reference classes declared further down, so members are added after the pass
+        List<String[]> fields = new ArrayList<>();
+        List<String[]> methods = new ArrayList<>();
+
+        ProguardReader.read(mojIn, new ProguardVisitor() {
+            private String currentClass;
+
+            @Override
+            public boolean skipsUnrenamedMembers() {
+                return true;
+            }
+
+            @Override
+            public void visitClass(String mojName, String obfName) {
+                moj2Obf.put(mojName, obfName);
+                currentClass = obfName;
+                tree.addClass(obfName, resolveClass(obfName, obf2Buk, obf2BukCache), mojName);
+            }
 
-        for (Map.Entry<String, String> map : obf2Buk.entrySet()) {
-            combined.add(map.getKey() + " " + map.getValue());
+            @Override
+            public void visitField(String type, String mojName, String obfName) {
+                if (currentClass == null || mojName.equals(obfName) || mojName.contains("$")) {
+                    return;
+                }
+                fields.add(new String[]{currentClass, obfName, type, mojName});
+            }
+
+            @Override
+            public void visitMethod(String returnType, String mojName, String args, String obfName) {
+                if (currentClass == null) {
+                    return;
+                }
+                if (obfName.equals(mojName) || mojName.contains("$") || obfName.equals("<init>") || obfName.equals("<clinit>")) {
+                    return;
+                }
+                methods.add(new String[]{currentClass, obfName, args, returnType, mojName});
+            }
+        });
+        // the mojang class mappings changed, and are only resolved from here on
+        moj2ObfCache.clear();
+
+        for (String[] field : fields) {
+            tree.addField(field[0], field[1], field[3], field[3],
+                    toJVMType(field[2], MappingTree.Namespace.OBF),
+                    toJVMType(field[2], MappingTree.Namespace.SPIGOT),
+                    toJVMType(field[2], MappingTree.Namespace.MOJANG));
         }
+        for (String[] method : methods) {
+            tree.addMethod(method[0], method[1], method[4], method[4],
+                    csrgDesc(method[2], method[3], MappingTree.Namespace.OBF),
+                    csrgDesc(method[2], method[3], MappingTree.Namespace.SPIGOT),
+                    csrgDesc(method[2], method[3], MappingTree.Namespace.MOJANG));
+        }
+        return tree.build();
+    }
 
-        for (File member : members) {
-            for (String line : Files.readAllLines(member.toPath())) {
+    /**
+     * Reads member mappings that are shipped with the spigot mappings into a mapping tree, without writing any files.
+     * The tree has no mojang names.
+     * @param members The member mappings.
+     * @return The mapping tree.
+     * @throws IOException If the member mappings could not be read.
+     */
+    public MappingTree makeMappingTree(MappingFile... members) throws IOException {
+        MappingTree.Builder tree = MappingTree.builder().header(header);
+        for (int i = 0; i < obf2Buk.size(); i++) {
+            tree.addClass(obf2Buk.getOriginal(i), obf2Buk.getMapped(i), null);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (MappingFile member : members) {
+            for (String line : readLines(member)) {
                 if (line.startsWith("#")) {
                     continue;
                 }
-                line = line.trim();
 
-                String[] split = line.split(" ");
+                String[] split = line.trim().split(" ");
+                if (split.length != 3 && split.length != 4) {
+                    continue;
+                }
+                String clazz = split[0];
+                String owner = resolveClass(clazz, obf2Buk.inverse(), buk2ObfCache);
+                tree.addClass(owner, clazz, null);
+
                 if (split.length == 3) {
-                    String clazz = split[0];
-                    String orig = split[1];
-                    String targ = split[2];
-
-                    combined.add(deobfClass(clazz, obf2Buk.inverse()) + " " + orig + " " + targ);
-                } else if (split.length == 4) {
-                    String clazz = split[0];
-                    String orig = split[1];
-                    String desc = split[2];
-                    String targ = split[3];
-
-                    combined.add(deobfClass(clazz, obf2Buk.inverse()) + " " + orig + " " + toObf(desc, obf2Buk.inverse()) + " " + targ);
+                    tree.addField(owner, split[1], split[2], null);
+                } else {
+                    builder.setLength(0);
+                    appendObf(split[2], obf2Buk.inverse(), builder);
+                    tree.addMethod(owner, split[1], split[3], null, builder.toString(), split[2], null);
                 }
             }
         }
+        return tree.build();
+    }
 
-        Files.write(out.toPath(), combined);
+    public void makeCombinedMaps(File out, File... members) throws IOException {
+        MappingFile[] memberFiles = new MappingFile[members.length];
+        for (int i = 0; i < members.length; i++) {
+            memberFiles[i] = new MappingFile(MappingFile.MappingType.MEMBERS, members[i]);
+        }
+        makeCombinedMaps(out, memberFiles);
+    }
+
+    public void makeCombinedMaps(File out, MappingFile... members) throws IOException {
+        try (CombinedWriter combined = new CombinedWriter(out)) {
+            for (MappingFile member : members) {
+                try (BufferedReader reader = member.openReader()) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        combined.accept(line);
+                    }
+                }
+            }
+            combined.commit();
+        }
+    }
+
+    /**
+     * Generates combined mappings from a mapping tree made by {@link #makeMappingTree(File)},
+     * so the mojang mappings do not have to be read again when the tree is needed anyway.
+     * The output has the same bytes as the combined mappings of {@link #makeMemberFieldAndCombinedMaps(File, File, File, File)}.
+     * @param out The file to write the combined mappings to.
+     * @param tree The mapping tree, made from the class mappings of this MapUtil.
+     * @throws IOException If the file could not be written.
+     */
+    public void makeCombinedMaps(File out, MappingTree tree) throws IOException {
+        try (SortedLineWriter members = new SortedLineWriter(out, sortMemoryLimit)) {
+            // the lines of the member mappings, in their order
+            for (MappingTree.ClassMapping clazz : tree.getClasses()) {
+                String owner = clazz.getName(MappingTree.Namespace.SPIGOT);
+                for (MappingTree.FieldMapping field : clazz.getFields()) {
+                    members.add(owner + " " + field.getName(MappingTree.Namespace.OBF) + " " + field.getName(MappingTree.Namespace.SPIGOT));
+                }
+                for (MappingTree.MethodMapping method : clazz.getMethods()) {
+                    members.add(owner + " " + method.getName(MappingTree.Namespace.OBF) + " " + method.getDescriptor(MappingTree.Namespace.SPIGOT)
+                            + " " + method.getName(MappingTree.Namespace.SPIGOT));
+                }
+            }
+
+            try (CombinedWriter combined = new CombinedWriter(out)) {
+                members.finish(null, combined);
+                combined.commit();
+            }
+        }
+    }
+
+    private static void addLine(SortedLineWriter out, String line) {
+        try {
+            out.add(line);
+        } catch (IOException e) {
+            // visitors can not throw checked exceptions, readFieldMaps unwraps it again
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes combined mappings line by line, the header and class mappings as soon as it is created,
+     * followed by the converted member mapping lines in the order they are passed in.
+     * The file is only replaced once {@link #commit()} is called, closing the writer without it discards the lines.
+     */
+    private class CombinedWriter implements SortedLineWriter.LineConsumer, Closeable {
+        private final AtomicFileOutputStream target;
+        private final BufferedWriter writer;
+        private final StringBuilder builder = new StringBuilder();
+
+        CombinedWriter(File out) throws IOException {
+            target = new AtomicFileOutputStream(out);
+            writer = target.newWriter();
+            try {
+                for (String line : header) {
+                    writeLine(line);
+                }
+                for (int i = 0; i < obf2Buk.size(); i++) {
+                    writeLine(obf2Buk.getOriginal(i) + " " + obf2Buk.getMapped(i));
+                }
+            } catch (IOException e) {
+                writer.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void accept(String line) throws IOException {
+            if (line.startsWith("#")) {
+                return;
+            }
+            line = line.trim();
+
+            String[] split = line.split(" ");
+            if (split.length == 3) {
+                String clazz = split[0];
+                String orig = split[1];
+                String targ = split[2];
+
+                writeLine(resolveClass(clazz, obf2Buk.inverse(), buk2ObfCache) + " " + orig + " " + targ);
+            } else if (split.length == 4) {
+                String clazz = split[0];
+                String orig = split[1];
+                String desc = split[2];
+                String targ = split[3];
+
+                builder.setLength(0);
+                builder.append(resolveClass(clazz, obf2Buk.inverse(), buk2ObfCache)).append(' ').append(orig).append(' ');
+                appendObf(desc, obf2Buk.inverse(), builder);
+                writeLine(builder.append(' ').append(targ).toString());
+            }
+        }
+
+        private void writeLine(String line) throws IOException {
+            writer.write(line);
+            writer.newLine();
+        }
+
+        void commit() throws IOException {
+            writer.flush();
+            target.commit();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static List<String> readLines(MappingFile file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = file.openReader()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Resolves a class name like {@link #deobfClass(String, Map)} does, but remembers the result,
+     * so the same outer and inner class chains are only resolved once.
+     * The caches are cleared whenever the mappings they belong to change.
+     */
+    private String resolveClass(String name, ClassMappings classMaps, Map<String, String> cache) {
+        String resolved = cache.get(name);
+        if (resolved != null) {
+            resolveHits.increment();
+            return resolved;
+        }
+
+        resolveMisses.increment();
+        resolved = classMaps.map(name);
+        cache.put(name, resolved);
+        return resolved;
+    }
+
+    /**
+     * @return How many class name resolutions were answered from the cache.
+     */
+    public long getResolveHits() {
+        return resolveHits.sum();
+    }
+
+    /**
+     * @return How many class name resolutions had to walk the class mappings.
+     */
+    public long getResolveMisses() {
+        return resolveMisses.sum();
     }
 
     public static String deobfClass(String obf, Map<String, String> classMaps) {
@@ -170,25 +730,64 @@ public class MapUtil {
     }
 
     public static String toObf(String desc, Map<String, String> map) {
-        desc = desc.substring(1);
-        StringBuilder out = new StringBuilder("(");
-        if (desc.charAt(0) == ')') {
-            desc = desc.substring(1);
+        StringBuilder out = new StringBuilder(desc.length() + 32);
+        appendObf(desc, map, out);
+        return out.toString();
+    }
+
+    /**
+     * Remaps the class types of a method descriptor and appends the result to a builder.
+     * The descriptor is walked once with a cursor, nothing besides the looked up class names is allocated,
+     * so a single builder can be reused for many descriptors.
+     * @param desc The method descriptor, starting with '('.
+     * @param map The class names to replace.
+     * @param out The builder to append the remapped descriptor to.
+     */
+    public static void appendObf(CharSequence desc, Map<String, String> map, StringBuilder out) {
+        appendObf(desc, (chars, start, end) -> map.get(chars.subSequence(start, end).toString()), out);
+    }
+
+    /**
+     * Remaps a method descriptor like {@link #appendObf(CharSequence, Map, StringBuilder)},
+     * but looks the class names up straight from the descriptor, so nothing is allocated for classes that are not mapped.
+     */
+    static void appendObf(CharSequence desc, ClassMappings map, StringBuilder out) {
+        appendObf(desc, map::get, out);
+    }
+
+    private static void appendObf(CharSequence desc, ClassLookup map, StringBuilder out) {
+        int length = desc.length();
+        int index = 1;
+        out.append('(');
+        if (desc.charAt(index) == ')') {
             out.append(')');
+            index++;
         }
-        while (desc.length() > 0) {
-            desc = obfType(desc, map, out);
-            if (desc.length() > 0 && desc.charAt(0) == ')') {
-                desc = desc.substring(1);
+        while (index < length) {
+            index = appendObfType(desc, index, map, out);
+            if (index < length && desc.charAt(index) == ')') {
                 out.append(')');
+                index++;
             }
         }
-        return out.toString();
     }
 
     public static String obfType(String desc, Map<String, String> map, StringBuilder out) {
-        int size = 1;
-        switch (desc.charAt(0)) {
+        return desc.substring(appendObfType(desc, 0, (chars, start, end) -> map.get(chars.subSequence(start, end).toString()), out));
+    }
+
+    /**
+     * Remaps a single type of a descriptor, including all of its array dimensions.
+     * @return The index right after the type.
+     */
+    private static int appendObfType(CharSequence desc, int index, ClassLookup map, StringBuilder out) {
+        char c = desc.charAt(index);
+        while (c == '[') {
+            out.append('[');
+            c = desc.charAt(++index);
+        }
+
+        switch (c) {
             case 'B':
             case 'C':
             case 'D':
@@ -198,34 +797,45 @@ public class MapUtil {
             case 'S':
             case 'Z':
             case 'V':
-                out.append(desc.charAt(0));
+                out.append(c);
                 break;
-            case '[':
-                out.append("[");
-                return obfType(desc.substring(1), map, out);
             case 'L':
-                String type = desc.substring(1, desc.indexOf(";"));
-                size += type.length() + 1;
-                out.append("L").append(map.containsKey(type) ? map.get(type) : type).append(";");
+                int end = index + 1;
+                while (desc.charAt(end) != ';') {
+                    end++;
+                }
+                String mapped = map.get(desc, index + 1, end);
+                out.append('L');
+                if (mapped != null) {
+                    out.append(mapped);
+                } else {
+                    out.append(desc, index + 1, end);
+                }
+                out.append(';');
+                return end + 1;
         }
-        return desc.substring(size);
+        return index + 1;
+    }
+
+    private String csrgDesc(String args, String ret) {
+        return csrgDesc(args, ret, MappingTree.Namespace.SPIGOT);
     }
 
-    private static String csrgDesc(Map<String, String> first, Map<String, String> second, String args, String ret) {
+    private String csrgDesc(String args, String ret, MappingTree.Namespace namespace) {
         String[] parts = args.substring(1, args.length() - 1).split(",");
         StringBuilder desc = new StringBuilder("(");
         for (String part : parts) {
             if (part.isEmpty()) {
                 continue;
             }
-            desc.append(toJVMType(first, second, part));
+            desc.append(toJVMType(part, namespace));
         }
         desc.append(")");
-        desc.append(toJVMType(first, second, ret));
+        desc.append(toJVMType(ret, namespace));
         return desc.toString();
     }
 
-    private static String toJVMType(Map<String, String> first, Map<String, String> second, String type) {
+    private String toJVMType(String type, MappingTree.Namespace namespace) {
         switch (type) {
             case "byte":
                 return "B";
@@ -247,13 +857,26 @@ public class MapUtil {
                 return "V";
             default:
                 if (type.endsWith("[]")) {
-                    return "[" + toJVMType(first, second, type.substring(0, type.length() - 2));
+                    return "[" + toJVMType(type.substring(0, type.length() - 2), namespace);
                 }
                 String clazzType = type.replace('.', '/');
-                String obf = deobfClass(clazzType, first);
-                String mappedType = deobfClass((obf != null) ? obf : clazzType, second);
+                if (namespace == MappingTree.Namespace.MOJANG) {
+                    return "L" + clazzType + ";";
+                }
+                String obf = resolveClass(clazzType, moj2Obf, moj2ObfCache);
+                if (namespace == MappingTree.Namespace.OBF) {
+                    return "L" + obf + ";";
+                }
+                String mappedType = resolveClass((obf != null) ? obf : clazzType, obf2Buk, obf2BukCache);
 
                 return "L" + ((mappedType != null) ? mappedType : clazzType) + ";";
         }
     }
+
+    /**
+     * Looks up the mapped name of a class whose name is a range of chars.
+     */
+    private interface ClassLookup {
+        String get(CharSequence chars, int start, int end);
+    }
 }
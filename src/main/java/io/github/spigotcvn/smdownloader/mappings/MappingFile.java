@@ -1,22 +1,47 @@
 package io.github.spigotcvn.smdownloader.mappings;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class MappingFile {
     private MappingFileType fileType;
     private MappingType type;
     private File file;
+    private String name;
+    private byte[] contents;
 
     public MappingFile(MappingType type, File file) {
         this.fileType = MappingFileType.getByName(file.getName());
         this.type = type;
         this.file = file;
+        this.name = file.getName();
     }
 
     public MappingFile(MappingFileType fileType, MappingType type, File file) {
         this.fileType = fileType;
         this.type = type;
         this.file = file;
+        this.name = file.getName();
+    }
+
+    /**
+     * Creates a mapping file that is only held in memory and has no file on disk.
+     * @param type The type of the mappings.
+     * @param name The name of the mapping file, used to determine the file type.
+     * @param contents The contents of the mapping file.
+     */
+    public MappingFile(MappingType type, String name, byte[] contents) {
+        this.fileType = MappingFileType.getByName(name);
+        this.type = type;
+        this.name = name;
+        this.contents = contents;
     }
 
     public MappingFileType getFileType() {
@@ -27,16 +52,81 @@ public class MappingFile {
         return type;
     }
 
+    /**
+     * Gets the file on disk backing this mapping file.
+     * @return The file, or null if this mapping file is only held in memory.
+     * @see #isInMemory()
+     */
     public File getFile() {
         return file;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public boolean isInMemory() {
+        return contents != null;
+    }
+
+    /**
+     * Opens a stream over the contents of this mapping file, no matter whether it is on disk or in memory.
+     * @return The opened stream.
+     * @throws IOException If the file could not be opened.
+     */
+    public InputStream openStream() throws IOException {
+        if(contents != null) {
+            return new ByteArrayInputStream(contents);
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Opens a UTF-8 reader over the contents of this mapping file.
+     * @return The opened reader.
+     * @throws IOException If the file could not be opened.
+     */
+    public BufferedReader openReader() throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens a byte level line scanner over the contents of this mapping file, files on disk are read through a channel.
+     * @return The scanner, positioned before the first line, which has to be closed.
+     * @throws IOException If the file could not be opened.
+     */
+    ByteLineReader openLines() throws IOException {
+        if(contents != null) {
+            return new ByteLineReader(ByteBuffer.wrap(contents));
+        }
+        return ByteLineReader.open(file);
+    }
+
+    /**
+     * Opens this mapping file for random access lookups, without parsing it.
+     * Files on disk are read into memory, so they can be regenerated or deleted while the lookups are in use.
+     * Use {@link BinaryMappings#open(File)} to memory map a file instead, which does not copy it onto the heap
+     * but keeps it locked on windows until the lookups are garbage collected.
+     * @return The lookups over this mapping file.
+     * @throws IOException If this is not a binary mapping file, or it could not be opened.
+     */
+    public BinaryMappings openBinary() throws IOException {
+        if(fileType != MappingFileType.BINARY) {
+            throw new IOException(name + " is not a binary mapping file");
+        }
+        if(contents != null) {
+            return new BinaryMappings(ByteBuffer.wrap(contents));
+        }
+        return BinaryMappings.read(file);
+    }
+
     public enum MappingFileType {
         TINY("tiny"),
 
         SRG("srg"),
         CSRG("csrg"),
-        PROGUARD("txt"); // mojang proguard mappigns are shippe in txt
+        PROGUARD("txt"), // mojang proguard mappigns are shippe in txt
+        BINARY("bmap"); // see BinaryMappingsWriter
 
         private final String fileExtension;
 
@@ -0,0 +1,283 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, in-memory view of the mappings of a version.
+ * Every class, field and method has a name in each {@link Namespace},
+ * fields and methods also have a descriptor in each namespace.
+ * Spigot does not rename members itself, the spigot name of a member is the name the spigot member mappings give it,
+ * which is the mojang name for generated member mappings.
+ * Names in the mojang namespace are null if no mojang mappings were available.
+ * Use {@link CsrgWriter} or {@link TinyWriter} to write a tree to files.
+ */
+public final class MappingTree {
+    private final List<String> header;
+    private final List<ClassMapping> classes;
+    private final List<Map<String, ClassMapping>> classesByName;
+
+    private MappingTree(List<String> header, List<ClassMapping> classes) {
+        this.header = Collections.unmodifiableList(new ArrayList<>(header));
+        this.classes = Collections.unmodifiableList(classes);
+        this.classesByName = new ArrayList<>();
+        for (Namespace namespace : Namespace.values()) {
+            Map<String, ClassMapping> byName = new HashMap<>(classes.size() * 2);
+            for (ClassMapping clazz : classes) {
+                String name = clazz.getName(namespace);
+                if (name != null) {
+                    byName.putIfAbsent(name, clazz);
+                }
+            }
+            classesByName.add(byName);
+        }
+    }
+
+    /**
+     * @return The comment lines of the spigot class mappings, including the leading #.
+     */
+    public List<String> getHeader() {
+        return header;
+    }
+
+    /**
+     * @return All classes, in the order they were added.
+     */
+    public List<ClassMapping> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Looks up a class by its name in a namespace.
+     * @param namespace The namespace of the name.
+     * @param name The internal name of the class, with / as separator.
+     * @return The class, or null if there is no class with that name.
+     */
+    public ClassMapping getClass(Namespace namespace, String name) {
+        return classesByName.get(namespace.ordinal()).get(name);
+    }
+
+    /**
+     * Maps a class name from one namespace to another.
+     * Inner classes without a mapping of their own are mapped through their outer class.
+     * @param name The internal name of the class.
+     * @param from The namespace of the name.
+     * @param to The namespace to map to.
+     * @return The mapped name, or the name itself if neither the class nor its outer classes are known.
+     */
+    public String mapClass(String name, Namespace from, Namespace to) {
+        Map<String, ClassMapping> byName = classesByName.get(from.ordinal());
+        int idx = name.length();
+        do {
+            ClassMapping clazz = byName.get(idx == name.length() ? name : name.substring(0, idx));
+            if (clazz != null && clazz.getName(to) != null) {
+                return clazz.getName(to) + name.substring(idx);
+            }
+        } while ((idx = name.lastIndexOf('$', idx - 1)) != -1);
+        return name;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public enum Namespace {
+        /** The obfuscated names of the vanilla server. */
+        OBF,
+        /** The names used by spigot. */
+        SPIGOT,
+        /** The names of the mojang mappings. */
+        MOJANG
+    }
+
+    public static final class ClassMapping {
+        private final String[] names;
+        private final List<FieldMapping> fields = new ArrayList<>();
+        private final List<MethodMapping> methods = new ArrayList<>();
+        private final List<FieldMapping> fieldsView = Collections.unmodifiableList(fields);
+        private final List<MethodMapping> methodsView = Collections.unmodifiableList(methods);
+
+        private ClassMapping(String[] names) {
+            this.names = names;
+        }
+
+        public String getName(Namespace namespace) {
+            return names[namespace.ordinal()];
+        }
+
+        public List<FieldMapping> getFields() {
+            return fieldsView;
+        }
+
+        public List<MethodMapping> getMethods() {
+            return methodsView;
+        }
+
+        /**
+         * @return The field with the given name, or null if there is none.
+         */
+        public FieldMapping getField(Namespace namespace, String name) {
+            for (FieldMapping field : fields) {
+                if (name.equals(field.getName(namespace))) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param descriptor The descriptor of the method in the same namespace as the name.
+         * @return The method with the given name and descriptor, or null if there is none.
+         */
+        public MethodMapping getMethod(Namespace namespace, String name, String descriptor) {
+            for (MethodMapping method : methods) {
+                if (name.equals(method.getName(namespace)) && descriptor.equals(method.getDescriptor(namespace))) {
+                    return method;
+                }
+            }
+            return null;
+        }
+    }
+
+    public abstract static class MemberMapping {
+        private final ClassMapping owner;
+        private final String[] names;
+        private final String[] descriptors;
+
+        private MemberMapping(ClassMapping owner, String[] names, String[] descriptors) {
+            this.owner = owner;
+            this.names = names;
+            this.descriptors = descriptors;
+        }
+
+        public ClassMapping getOwner() {
+            return owner;
+        }
+
+        public String getName(Namespace namespace) {
+            return names[namespace.ordinal()];
+        }
+
+        /**
+         * @return The JVM descriptor of the member with the class names of the namespace, or null if unknown.
+         */
+        public String getDescriptor(Namespace namespace) {
+            return descriptors[namespace.ordinal()];
+        }
+    }
+
+    public static final class FieldMapping extends MemberMapping {
+        private FieldMapping(ClassMapping owner, String[] names, String[] descriptors) {
+            super(owner, names, descriptors);
+        }
+    }
+
+    public static final class MethodMapping extends MemberMapping {
+        private MethodMapping(ClassMapping owner, String[] names, String[] descriptors) {
+            super(owner, names, descriptors);
+        }
+    }
+
+    /**
+     * Collects classes and members for a new tree.
+     * Classes are identified by their obfuscated name, adding a class twice updates its names.
+     */
+    public static final class Builder {
+        private final List<String> header = new ArrayList<>();
+        private final Map<String, ClassMapping> classes = new LinkedHashMap<>();
+        private boolean built;
+
+        private Builder() {
+        }
+
+        public Builder header(List<String> header) {
+            this.header.addAll(header);
+            return this;
+        }
+
+        /**
+         * Adds a class, or replaces the names of a class that was already added.
+         * @param obf The obfuscated name.
+         * @param spigot The spigot name, or null to use the obfuscated name.
+         * @param mojang The mojang name, or null if it is unknown.
+         * @return This builder.
+         */
+        public Builder addClass(String obf, String spigot, String mojang) {
+            checkNotBuilt();
+            String[] names = {obf, spigot != null ? spigot : obf, mojang};
+            ClassMapping existing = classes.get(obf);
+            if (existing != null) {
+                System.arraycopy(names, 0, existing.names, 0, names.length);
+            } else {
+                classes.put(obf, new ClassMapping(names));
+            }
+            return this;
+        }
+
+        /**
+         * Adds a field without a known type to a class,
+         * the class is added with only its obfuscated name if it was not added yet.
+         * @param owner The obfuscated name of the class.
+         * @return This builder.
+         */
+        public Builder addField(String owner, String obf, String spigot, String mojang) {
+            return addField(owner, obf, spigot, mojang, null, null, null);
+        }
+
+        /**
+         * Adds a field to a class, the class is added with only its obfuscated name if it was not added yet.
+         * @param owner The obfuscated name of the class.
+         * @return This builder.
+         */
+        public Builder addField(String owner, String obf, String spigot, String mojang,
+                                String obfDesc, String spigotDesc, String mojangDesc) {
+            ClassMapping clazz = getOrAddClass(owner);
+            clazz.fields.add(new FieldMapping(clazz, new String[]{obf, spigot, mojang},
+                    new String[]{obfDesc, spigotDesc, mojangDesc}));
+            return this;
+        }
+
+        /**
+         * Adds a method to a class, the class is added with only its obfuscated name if it was not added yet.
+         * @param owner The obfuscated name of the class.
+         * @return This builder.
+         */
+        public Builder addMethod(String owner, String obf, String spigot, String mojang,
+                                 String obfDesc, String spigotDesc, String mojangDesc) {
+            ClassMapping clazz = getOrAddClass(owner);
+            clazz.methods.add(new MethodMapping(clazz, new String[]{obf, spigot, mojang},
+                    new String[]{obfDesc, spigotDesc, mojangDesc}));
+            return this;
+        }
+
+        /**
+         * Creates the tree, the builder can not be used anymore afterwards.
+         * @return The tree.
+         */
+        public MappingTree build() {
+            checkNotBuilt();
+            built = true;
+            return new MappingTree(header, new ArrayList<>(classes.values()));
+        }
+
+        private ClassMapping getOrAddClass(String obf) {
+            checkNotBuilt();
+            ClassMapping clazz = classes.get(obf);
+            if (clazz == null) {
+                addClass(obf, null, null);
+                clazz = classes.get(obf);
+            }
+            return clazz;
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("The tree was already built");
+            }
+        }
+    }
+}
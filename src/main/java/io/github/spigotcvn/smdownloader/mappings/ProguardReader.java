@@ -0,0 +1,287 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads proguard (mojang) mapping files line by line and passes every entry to a {@link ProguardVisitor}.
+ * The file is never held in memory as a whole.
+ * Files are scanned on the byte level, so comments and skipped members are never decoded.
+ */
+public class ProguardReader {
+    /**
+     * Reads a proguard mapping file.
+     * @param file The file to read.
+     * @param visitor The visitor to pass the entries to.
+     * @throws IOException If the file could not be read.
+     */
+    public static void read(File file, ProguardVisitor visitor) throws IOException {
+        try (ByteLineReader lines = ByteLineReader.open(file)) {
+            read(lines, visitor);
+        }
+    }
+
+    /**
+     * Reads proguard mappings on the byte level, with the same results as {@link #read(BufferedReader, ProguardVisitor)}.
+     */
+    static void read(ByteLineReader lines, ProguardVisitor visitor) throws IOException {
+        boolean skipUnrenamed = visitor.skipsUnrenamedMembers();
+        boolean inClass = false;
+        while (lines.next()) {
+            // trim like String#trim, bytes of multi-byte characters are never trimmed
+            int start = lines.start();
+            int end = lines.end();
+            while (start < end && (lines.byteAt(start) & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (lines.byteAt(end - 1) & 0xFF) <= ' ') {
+                end--;
+            }
+            if (start == end || lines.byteAt(start) == '#') {
+                continue;
+            }
+
+            if (lines.byteAt(end - 1) == ':') {
+                int arrow = lines.indexOf(" -> ", start, end);
+                if (arrow == -1) {
+                    throw new IOException("Malformed class line: " + lines.decode(start, end));
+                }
+                visitor.visitClass(lines.decode(start, arrow).replace('.', '/'),
+                        lines.decode(arrow + 4, end - 1).replace('.', '/'));
+                inClass = true;
+            } else if (inClass) {
+                readMember(lines, start, end, skipUnrenamed, visitor);
+            }
+        }
+    }
+
+    /**
+     * Reads proguard mappings from a reader.
+     * Comments and members that appear before the first class are skipped.
+     * @param reader The reader to read the mappings from, it is not closed.
+     * @param visitor The visitor to pass the entries to.
+     * @throws IOException If the mappings could not be read.
+     */
+    public static void read(BufferedReader reader, ProguardVisitor visitor) throws IOException {
+        boolean skipUnrenamed = visitor.skipsUnrenamedMembers();
+        boolean inClass = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.endsWith(":")) {
+                int arrow = line.indexOf(" -> ");
+                if (arrow == -1) {
+                    throw new IOException("Malformed class line: " + line);
+                }
+                String orig = line.substring(0, arrow).replace('.', '/');
+                String obf = line.substring(arrow + 4, line.length() - 1).replace('.', '/');
+
+                visitor.visitClass(orig, obf);
+                inClass = true;
+            } else if (inClass) {
+                readMember(line, skipUnrenamed, visitor);
+            }
+        }
+    }
+
+    /**
+     * Reads only the class headers of proguard mappings, member lines are skipped without being decoded.
+     * @param lines The mappings to read.
+     * @param visitor The visitor to pass the classes to, it never gets any members.
+     * @throws IOException If the mappings could not be read.
+     */
+    static void readClasses(ByteLineReader lines, ProguardVisitor visitor) throws IOException {
+        while (lines.next()) {
+            int start = lines.start();
+            int end = lines.end();
+            if (!isClassLine(lines, start, end)) {
+                continue;
+            }
+            while ((lines.byteAt(start) & 0xFF) <= ' ') {
+                start++;
+            }
+            while ((lines.byteAt(end - 1) & 0xFF) <= ' ') {
+                end--;
+            }
+            int arrow = lines.indexOf(" -> ", start, end);
+            if (arrow == -1) {
+                throw new IOException("Malformed class line: " + lines.decode(start, end));
+            }
+            visitor.visitClass(lines.decode(start, arrow).replace('.', '/'),
+                    lines.decode(arrow + 4, end - 1).replace('.', '/'));
+        }
+    }
+
+    /**
+     * Splits a proguard mapping file into ranges of whole class blocks, so the ranges can be read independently.
+     * Every range but the first starts at a class header, the ranges are roughly of the same size.
+     * Only the lines right after the split points are scanned, the rest of the file is not read here.
+     * @param file The proguard mappings.
+     * @param chunks How many ranges to aim for, there are less if there are not enough classes.
+     * @return The positions the ranges start at, followed by the size of the file.
+     * @throws IOException If the file could not be read.
+     */
+    static long[] splitClassBlocks(File file, int chunks) throws IOException {
+        long size = file.length();
+        long[] bounds = new long[Math.max(1, chunks) + 1];
+        int count = 1;
+        long target = Math.max(1, size / (bounds.length - 1));
+        while (count < bounds.length - 1) {
+            long start = nextClassLine(file, bounds[count - 1] + target, size);
+            if (start == -1) {
+                break;
+            }
+            bounds[count++] = start;
+        }
+
+        long[] result = Arrays.copyOf(bounds, count + 1);
+        result[count] = size;
+        return result;
+    }
+
+    /**
+     * @return The position of the first class header that starts at or after the position, or -1 if there is none.
+     */
+    private static long nextClassLine(File file, long position, long size) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        // starting one byte early, the first line is the rest of the line the position is in,
+        // or the line break right before it
+        try (ByteLineReader lines = ByteLineReader.open(file, position - 1, size)) {
+            lines.next();
+            while (lines.next()) {
+                if (isClassLine(lines, lines.start(), lines.end())) {
+                    return lines.offset(lines.start());
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a line would be read as a class header by {@link #read(ByteLineReader, ProguardVisitor)},
+     * without decoding it.
+     */
+    private static boolean isClassLine(ByteLineReader lines, int start, int end) {
+        while (start < end && (lines.byteAt(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (lines.byteAt(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        return end > start && lines.byteAt(start) != '#' && lines.byteAt(end - 1) == ':';
+    }
+
+    /**
+     * Splits a member line of the form {@code [from:to:]type name[(args)] -> obf}.
+     * This matches what the pattern {@code (?:\d+:\d+:)?(.*?) (.*?) \-> (.*)} would capture,
+     * without creating a matcher or any strings besides the parts that are passed on.
+     */
+    private static void readMember(String line, boolean skipUnrenamed, ProguardVisitor visitor) throws IOException {
+        int start = skipLineNumbers(line);
+
+        int space = line.indexOf(' ', start);
+        int arrow = space == -1 ? -1 : line.indexOf(" -> ", space + 1);
+        if (arrow == -1) {
+            throw new IOException("Malformed member line: " + line);
+        }
+
+        int paren = line.indexOf('(', space + 1);
+        boolean method = paren != -1 && paren < arrow;
+        int nameEnd = method ? paren : arrow;
+        int nameLength = nameEnd - space - 1;
+        boolean unrenamed = nameLength == line.length() - arrow - 4 && line.regionMatches(space + 1, line, arrow + 4, nameLength);
+        if (skipUnrenamed && (unrenamed || line.lastIndexOf('$', nameEnd - 1) > space)) {
+            return;
+        }
+
+        String type = line.substring(start, space);
+        String obf = line.substring(arrow + 4);
+        if (method) {
+            visitor.visitMethod(type, line.substring(space + 1, paren), line.substring(paren, arrow), obf);
+        } else {
+            visitor.visitField(type, line.substring(space + 1, arrow), obf);
+        }
+    }
+
+    /**
+     * Byte level version of {@link #readMember(String, boolean, ProguardVisitor)} for a trimmed line.
+     * Members that are skipped are recognized by comparing bytes, before anything is decoded.
+     */
+    private static void readMember(ByteLineReader lines, int lineStart, int lineEnd, boolean skipUnrenamed,
+                                   ProguardVisitor visitor) throws IOException {
+        int start = skipLineNumbers(lines, lineStart, lineEnd);
+
+        int space = lines.indexOf(' ', start, lineEnd);
+        int arrow = space == -1 ? -1 : lines.indexOf(" -> ", space + 1, lineEnd);
+        if (arrow == -1) {
+            throw new IOException("Malformed member line: " + lines.decode(lineStart, lineEnd));
+        }
+
+        int paren = lines.indexOf('(', space + 1, lineEnd);
+        boolean method = paren != -1 && paren < arrow;
+        int nameEnd = method ? paren : arrow;
+        if (skipUnrenamed && (lines.rangeEquals(space + 1, nameEnd, arrow + 4, lineEnd)
+                || lines.indexOf('$', space + 1, nameEnd) != -1)) {
+            return;
+        }
+
+        String type = lines.decode(start, space);
+        String name = lines.decode(space + 1, nameEnd);
+        String obf = lines.decode(arrow + 4, lineEnd);
+        if (method) {
+            visitor.visitMethod(type, name, lines.decode(paren, arrow), obf);
+        } else {
+            visitor.visitField(type, name, obf);
+        }
+    }
+
+    /**
+     * Skips the optional {@code from:to:} line number range at the start of a member line.
+     * @return The index the member type starts at.
+     */
+    private static int skipLineNumbers(String line) {
+        int firstColon = skipDigits(line, 0);
+        if (firstColon == 0 || firstColon >= line.length() || line.charAt(firstColon) != ':') {
+            return 0;
+        }
+        int secondColon = skipDigits(line, firstColon + 1);
+        if (secondColon == firstColon + 1 || secondColon >= line.length() || line.charAt(secondColon) != ':') {
+            return 0;
+        }
+        return secondColon + 1;
+    }
+
+    private static int skipDigits(String line, int index) {
+        while (index < line.length() && line.charAt(index) >= '0' && line.charAt(index) <= '9') {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipLineNumbers(ByteLineReader lines, int start, int end) {
+        int firstColon = skipDigits(lines, start, end);
+        if (firstColon == start || firstColon >= end || lines.byteAt(firstColon) != ':') {
+            return start;
+        }
+        int secondColon = skipDigits(lines, firstColon + 1, end);
+        if (secondColon == firstColon + 1 || secondColon >= end || lines.byteAt(secondColon) != ':') {
+            return start;
+        }
+        return secondColon + 1;
+    }
+
+    private static int skipDigits(ByteLineReader lines, int index, int end) {
+        while (index < end && lines.byteAt(index) >= '0' && lines.byteAt(index) <= '9') {
+            index++;
+        }
+        return index;
+    }
+}
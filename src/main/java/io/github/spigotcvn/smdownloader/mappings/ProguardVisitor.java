@@ -0,0 +1,40 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+/**
+ * Receives the entries of a proguard mapping file, in the order they appear in the file.
+ * @see ProguardReader
+ */
+public interface ProguardVisitor {
+    /**
+     * Called for every class header, all following members belong to this class.
+     * @param mojName The mojang name of the class, separated by '/'.
+     * @param obfName The obfuscated name of the class, separated by '/'.
+     */
+    void visitClass(String mojName, String obfName);
+
+    /**
+     * Called for every field of the current class.
+     * @param type The type of the field, as written in the mappings (e.g. int[] or java.lang.String).
+     * @param mojName The mojang name of the field.
+     * @param obfName The obfuscated name of the field.
+     */
+    void visitField(String type, String mojName, String obfName);
+
+    /**
+     * Called for every method of the current class.
+     * @param returnType The return type of the method, as written in the mappings.
+     * @param mojName The mojang name of the method.
+     * @param args The argument list as written in the mappings, starting with '('.
+     * @param obfName The obfuscated name of the method.
+     */
+    void visitMethod(String returnType, String mojName, String args, String obfName);
+
+    /**
+     * Whether readers may skip members whose mojang name is the same as their obfuscated name or contains a '$',
+     * which includes constructors and static initializers. Skipped members are never decoded into strings.
+     * @return True if the visitor ignores these members anyway, false by default.
+     */
+    default boolean skipsUnrenamedMembers() {
+        return false;
+    }
+}
@@ -0,0 +1,263 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Writes lines to a file in sorted order, with the same bytes as collecting them,
+ * calling {@link Collections#sort(List)} and {@link Files#write(java.nio.file.Path, Iterable, java.nio.file.OpenOption...)}.
+ * Lines are only kept in memory up to a limit, every time it is reached the lines are sorted and spilled
+ * into a temporary run file next to the output. {@link #finish()} merges the runs into the output.
+ * Output that fits into the limit never touches the disk besides the output file itself.
+ * Closing a writer that was not finished discards the lines without touching the output,
+ * and the output is only replaced once it was written completely,
+ * so a failed or killed generation does not leave a partial file behind.
+ */
+public class SortedLineWriter implements Closeable {
+    public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+
+    private final File out;
+    private final long memoryLimit;
+    private final List<File> runs = new ArrayList<>();
+    private List<String> lines = new ArrayList<>();
+    private long memory;
+    private boolean closed;
+
+    /**
+     * Creates a new SortedLineWriter with a memory limit of {@link #DEFAULT_MEMORY_LIMIT}.
+     * @param out The file to write the lines to.
+     */
+    public SortedLineWriter(File out) {
+        this(out, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Creates a new SortedLineWriter.
+     * @param out The file to write the lines to.
+     * @param memoryLimit Roughly how many bytes of lines are kept in memory before they are spilled to disk.
+     */
+    public SortedLineWriter(File out, long memoryLimit) {
+        this.out = out;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Adds a line, it must not contain line breaks.
+     * @param line The line to add.
+     * @throws IOException If the lines had to be spilled and could not be written.
+     */
+    public void add(String line) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The writer is already finished or closed");
+        }
+        lines.add(line);
+        // the chars of the string, plus the string and array headers and the list slot
+        memory += 2L * line.length() + 64;
+        if (memory >= memoryLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * Adds several lines, see {@link #add(String)}.
+     */
+    public void addAll(Iterable<String> lines) throws IOException {
+        for (String line : lines) {
+            add(line);
+        }
+    }
+
+    /**
+     * @return How many times the lines were spilled to disk so far.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(lines);
+        File run = File.createTempFile(out.getName(), ".run", out.getAbsoluteFile().getParentFile());
+        runs.add(run);
+        try (BufferedWriter writer = Files.newBufferedWriter(run.toPath(), StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        lines = new ArrayList<>();
+        memory = 0;
+    }
+
+    /**
+     * Sorts and writes all lines to the output file.
+     * @throws IOException If the output could not be written.
+     */
+    public void finish() throws IOException {
+        finish(null);
+    }
+
+    /**
+     * Sorts and writes all lines to the output file.
+     * @param consumer Also receives every line in sorted order while the file is written, or null.
+     * @throws IOException If the output could not be written.
+     */
+    public void finish(LineConsumer consumer) throws IOException {
+        try (AtomicFileOutputStream target = new AtomicFileOutputStream(out);
+             BufferedWriter writer = target.newWriter()) {
+            finish(writer, consumer);
+            writer.flush();
+            target.commit();
+        }
+    }
+
+    /**
+     * Sorts and writes all lines to a writer instead of the output file, which is never written.
+     * The output file only decides where the lines are spilled to, so several sorted sections can be written into one file.
+     * @param writer The writer to write the lines to, it is not flushed or closed, or null to only pass them to the consumer.
+     * @param consumer Also receives every line in sorted order while it is written, or null.
+     * @throws IOException If the lines could not be written.
+     */
+    void finish(BufferedWriter writer, LineConsumer consumer) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The writer is already finished or closed");
+        }
+        closed = true;
+
+        Collections.sort(lines);
+        List<LineSource> sources = new ArrayList<>();
+        try {
+            if (runs.isEmpty()) {
+                for (String line : lines) {
+                    write(writer, line, consumer);
+                }
+            } else {
+                merge(writer, sources, consumer);
+            }
+        } finally {
+            for (LineSource source : sources) {
+                source.close();
+            }
+            for (File run : runs) {
+                run.delete();
+            }
+            lines = null;
+        }
+    }
+
+    private void merge(BufferedWriter writer, List<LineSource> sources, LineConsumer consumer) throws IOException {
+        PriorityQueue<LineSource> queue = new PriorityQueue<>();
+        for (File run : runs) {
+            sources.add(new RunSource(Files.newBufferedReader(run.toPath(), StandardCharsets.UTF_8)));
+        }
+        sources.add(new ListSource(lines.iterator()));
+        for (LineSource source : sources) {
+            if (source.advance()) {
+                queue.add(source);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            LineSource source = queue.poll();
+            write(writer, source.current, consumer);
+            if (source.advance()) {
+                queue.add(source);
+            }
+        }
+    }
+
+    /**
+     * Discards the lines if the writer was not finished, the output file is not touched.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (File run : runs) {
+            run.delete();
+        }
+        lines = null;
+    }
+
+    private static void write(BufferedWriter writer, String line, LineConsumer consumer) throws IOException {
+        if (writer != null) {
+            writer.write(line);
+            writer.newLine();
+        }
+        if (consumer != null) {
+            consumer.accept(line);
+        }
+    }
+
+    /**
+     * Receives the sorted lines while they are written.
+     */
+    public interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    private abstract static class LineSource implements Comparable<LineSource>, Closeable {
+        protected String current;
+
+        /**
+         * Moves to the next line.
+         * @return False if there are no more lines.
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public int compareTo(LineSource other) {
+            return current.compareTo(other.current);
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class RunSource extends LineSource {
+        private final BufferedReader reader;
+
+        RunSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            current = reader.readLine();
+            return current != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static class ListSource extends LineSource {
+        private final Iterator<String> iterator;
+
+        ListSource(Iterator<String> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        boolean advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return current != null;
+        }
+    }
+}
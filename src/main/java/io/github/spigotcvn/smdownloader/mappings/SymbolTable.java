@@ -0,0 +1,136 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.util.Arrays;
+
+/**
+ * Interns class names into dense int ids, every distinct name is stored exactly once.
+ * The class mappings of a {@link MapUtil} share one table, so an obfuscated name that is both
+ * a spigot and a mojang mapping target is only kept once.
+ * Names can be looked up by a range of a char sequence, without creating a string for them.
+ * Adding names is not thread safe, looking them up from several threads is, as long as no names are added meanwhile.
+ */
+class SymbolTable {
+    static final int NONE = -1;
+
+    private String[] symbols = new String[1024];
+    private int[] table = newTable(2048);
+    private int size;
+
+    /**
+     * Gets the id of a name, adding it to the table if it is not known yet.
+     * @param symbol The name to intern.
+     * @return The id of the name.
+     */
+    int intern(String symbol) {
+        int slot = findSlot(symbol, 0, symbol.length());
+        if (table[slot] != NONE) {
+            return table[slot];
+        }
+
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+        }
+        int id = size++;
+        symbols[id] = symbol;
+        table[slot] = id;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the id of a name without adding it.
+     * @param symbol The name to look up.
+     * @return The id of the name, or {@link #NONE} if it is not in the table.
+     */
+    int find(String symbol) {
+        return table[findSlot(symbol, 0, symbol.length())];
+    }
+
+    /**
+     * Gets the id of a range of chars without adding it, nothing is allocated.
+     * @param chars The chars to look up.
+     * @param start The index of the first char of the name.
+     * @param end The index after the last char of the name.
+     * @return The id of the name, or {@link #NONE} if it is not in the table.
+     */
+    int find(CharSequence chars, int start, int end) {
+        return table[findSlot(chars, start, end)];
+    }
+
+    /**
+     * Gets the name with the given id.
+     * @param id The id returned by {@link #intern(String)}.
+     * @return The name.
+     */
+    String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol id " + id);
+        }
+        return symbols[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int findSlot(CharSequence chars, int start, int end) {
+        int mask = table.length - 1;
+        int slot = mix(hash(chars, start, end)) & mask;
+        while (table[slot] != NONE && !matches(symbols[table[slot]], chars, start, end)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        table = newTable(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(symbols[id].hashCode()) & mask;
+            while (table[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    /**
+     * @return The same hash as {@link String#hashCode()} of the range, so names and ranges end up in the same slots.
+     */
+    private static int hash(CharSequence chars, int start, int end) {
+        if (chars instanceof String && start == 0 && end == chars.length()) {
+            return chars.hashCode();
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean matches(String symbol, CharSequence chars, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NONE);
+        return table;
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads Tiny v2 files into a {@link MappingTree}.
+ * Only the namespaces obf, spigot and mojang are read, others are ignored, obf is required.
+ * Tiny only stores member descriptors in its first namespace, which therefore has to be one of the three,
+ * the descriptors in the other namespaces are mapped through the classes of the file.
+ * Fields with an empty descriptor, as {@link TinyWriter} writes them, have no descriptor in any namespace.
+ * Parameters, local variables and comments are skipped.
+ * @see TinyWriter
+ */
+public final class TinyReader {
+    private TinyReader() {
+    }
+
+    /**
+     * Reads a Tiny v2 file.
+     * @param file The file to read.
+     * @return The mapping tree.
+     * @throws IOException If the file could not be read or is not a Tiny v2 file.
+     */
+    public static MappingTree read(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads Tiny v2 mappings from a reader.
+     * @param reader The reader to read the mappings from, it is not closed.
+     * @return The mapping tree.
+     * @throws IOException If the mappings could not be read, are not Tiny v2 mappings,
+     *                     or their first namespace is not known.
+     */
+    public static MappingTree read(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        String[] header = line == null ? new String[0] : line.split("\t", -1);
+        if (header.length < 4 || !header[0].equals("tiny") || !header[1].equals("2")) {
+            throw new IOException("Not a tiny v2 file: " + line);
+        }
+
+        // the namespace of every name column, null for namespaces that are not read
+        Namespace[] columns = new Namespace[header.length - 3];
+        boolean hasObf = false;
+        for (int i = 0; i < columns.length; i++) {
+            for (Namespace namespace : Namespace.values()) {
+                if (namespace.name().toLowerCase(Locale.ROOT).equals(header[i + 3])) {
+                    columns[i] = namespace;
+                    hasObf |= namespace == Namespace.OBF;
+                }
+            }
+        }
+        if (!hasObf) {
+            throw new IOException("Tiny file has no obf namespace: " + line);
+        }
+        if (columns[0] == null) {
+            // the descriptors are written with the class names of the first namespace, they can not be mapped otherwise
+            throw new IOException("Tiny file has an unknown first namespace " + header[3] + ": " + line);
+        }
+
+        List<String> properties = new ArrayList<>();
+        List<String[]> classes = new ArrayList<>();
+        List<String[]> members = new ArrayList<>();
+        String[] currentClass = null;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int depth = 0;
+            while (depth < line.length() && line.charAt(depth) == '\t') {
+                depth++;
+            }
+            String[] split = line.substring(depth).split("\t", -1);
+
+            if (depth == 0 && split[0].equals("c")) {
+                currentClass = readNames(split, 1, columns, line);
+                classes.add(currentClass);
+            } else if (depth == 1 && currentClass == null) {
+                if (split[0].equals(TinyWriter.HEADER_PROPERTY) && split.length > 1) {
+                    properties.add(split[1]);
+                }
+            } else if (depth == 1 && (split[0].equals("f") || split[0].equals("m"))) {
+                if (split.length < 2) {
+                    throw new IOException("Malformed member line: " + line);
+                }
+                String[] names = readNames(split, 2, columns, line);
+                members.add(new String[]{split[0], currentClass[Namespace.OBF.ordinal()], split[1],
+                        names[0], names[1], names[2]});
+            }
+        }
+
+        Namespace descNamespace = columns[0];
+        List<Map<String, String>> classMaps = new ArrayList<>();
+        for (Namespace namespace : Namespace.values()) {
+            Map<String, String> classMap = new HashMap<>(classes.size() * 2);
+            for (String[] names : classes) {
+                String from = names[descNamespace.ordinal()];
+                String to = names[namespace.ordinal()];
+                if (from != null && to != null) {
+                    classMap.put(from, to);
+                }
+            }
+            classMaps.add(classMap);
+        }
+
+        MappingTree.Builder tree = MappingTree.builder().header(properties);
+        for (String[] names : classes) {
+            tree.addClass(names[0], names[1], names[2]);
+        }
+        for (String[] member : members) {
+            if (member[2].isEmpty() && member[0].equals("f")) {
+                tree.addField(member[1], member[3], member[4], member[5]);
+                continue;
+            }
+            String[] descriptors = new String[Namespace.values().length];
+            for (Namespace namespace : Namespace.values()) {
+                descriptors[namespace.ordinal()] = mapDescriptor(member[2], classMaps.get(namespace.ordinal()));
+            }
+            if (member[0].equals("f")) {
+                tree.addField(member[1], member[3], member[4], member[5], descriptors[0], descriptors[1], descriptors[2]);
+            } else {
+                tree.addMethod(member[1], member[3], member[4], member[5], descriptors[0], descriptors[1], descriptors[2]);
+            }
+        }
+        return tree.build();
+    }
+
+    /**
+     * Picks the names of the known namespaces out of a line, empty names are unknown and become null.
+     * @return The names, indexed by the ordinal of their namespace.
+     */
+    private static String[] readNames(String[] split, int offset, Namespace[] columns, String line) throws IOException {
+        if (split.length - offset < columns.length) {
+            throw new IOException("Missing names in line: " + line);
+        }
+
+        String[] names = new String[Namespace.values().length];
+        for (int i = 0; i < columns.length; i++) {
+            String name = split[offset + i];
+            if (columns[i] != null && !name.isEmpty()) {
+                names[columns[i].ordinal()] = name;
+            }
+        }
+        if (names[Namespace.OBF.ordinal()] == null) {
+            throw new IOException("Missing obf name in line: " + line);
+        }
+        return names;
+    }
+
+    private static String mapDescriptor(String desc, Map<String, String> classMap) {
+        StringBuilder out = new StringBuilder(desc.length());
+        int index = 0;
+        while (index < desc.length()) {
+            char c = desc.charAt(index);
+            if (c != 'L') {
+                out.append(c);
+                index++;
+                continue;
+            }
+            int end = desc.indexOf(';', index);
+            if (end == -1) {
+                // not a valid descriptor, keep the rest as it is
+                out.append(desc, index, desc.length());
+                break;
+            }
+            out.append('L').append(MapUtil.deobfClass(desc.substring(index + 1, end), classMap)).append(';');
+            index = end + 1;
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.ClassMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.MemberMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes a {@link MappingTree} as a Tiny v2 file with the namespaces obf, spigot and mojang.
+ * Entries are streamed to the writer in the order of the tree, nothing is collected or sorted in memory.
+ * The header of the spigot class mappings is kept in header properties.
+ * Fields without a descriptor, like the ones read from shipped member mappings, are written with an empty descriptor,
+ * which {@link TinyReader} reads back as unknown.
+ * @see TinyReader
+ */
+public final class TinyWriter {
+    static final String HEADER_PROPERTY = "spigot-header";
+
+    private TinyWriter() {
+    }
+
+    /**
+     * Writes a mapping tree to a file.
+     * @param tree The mappings to write.
+     * @param out The file to write to.
+     * @throws IOException If the file could not be written, or a method has no descriptor.
+     */
+    public static void write(MappingTree tree, File out) throws IOException {
+        try (AtomicFileOutputStream target = new AtomicFileOutputStream(out);
+             BufferedWriter writer = target.newWriter()) {
+            write(tree, writer);
+            writer.flush();
+            target.commit();
+        }
+    }
+
+    /**
+     * Writes a mapping tree to a writer.
+     * Tabs in the header lines are replaced by spaces, since tiny separates values with tabs.
+     * @param tree The mappings to write.
+     * @param writer The writer to write to, it is not closed.
+     * @throws IOException If the mappings could not be written, or a method has no descriptor.
+     */
+    public static void write(MappingTree tree, Writer writer) throws IOException {
+        writer.write("tiny\t2\t0");
+        for (Namespace namespace : Namespace.values()) {
+            writer.write('\t');
+            writer.write(namespace.name().toLowerCase(Locale.ROOT));
+        }
+        writer.write('\n');
+
+        for (String line : tree.getHeader()) {
+            writer.write('\t');
+            writer.write(HEADER_PROPERTY);
+            writer.write('\t');
+            writer.write(line.replace('\t', ' '));
+            writer.write('\n');
+        }
+
+        for (ClassMapping clazz : tree.getClasses()) {
+            writer.write('c');
+            for (Namespace namespace : Namespace.values()) {
+                writer.write('\t');
+                writeName(writer, clazz.getName(namespace));
+            }
+            writer.write('\n');
+
+            writeMembers(writer, "\tf\t", clazz.getFields(), true);
+            writeMembers(writer, "\tm\t", clazz.getMethods(), false);
+        }
+        writer.flush();
+    }
+
+    private static void writeMembers(Writer writer, String prefix, List<? extends MemberMapping> members,
+                                     boolean fields) throws IOException {
+        for (MemberMapping member : members) {
+            String descriptor = member.getDescriptor(Namespace.OBF);
+            if (descriptor == null) {
+                // a field is identified by its name alone, a method needs its descriptor to tell overloads apart
+                if (!fields) {
+                    throw new IOException("Method " + member.getOwner().getName(Namespace.OBF) + "." + member.getName(Namespace.OBF)
+                            + " has no descriptor, which tiny mappings require");
+                }
+                descriptor = "";
+            }
+
+            writer.write(prefix);
+            writer.write(descriptor);
+            for (Namespace namespace : Namespace.values()) {
+                writer.write('\t');
+                writeName(writer, member.getName(namespace));
+            }
+            writer.write('\n');
+        }
+    }
+
+    private static void writeName(Writer writer, String name) throws IOException {
+        // tiny writes unknown names as empty names
+        if (name != null) {
+            writer.write(name);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.spigotcvn.smdownloader;
+
+import io.github.spigotcvn.smdownloader.git.BuildDataMirror;
+import io.github.spigotcvn.smdownloader.io.DownloadCache;
+import io.github.spigotcvn.smdownloader.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the server against a local builddata repository and a download cache seeded with the version data
+ * and the mojang mappings, so versions are loaded end to end without touching the network.
+ */
+class MappingsServerTest {
+    private static final String CLASS_MAPPINGS = String.join("\n",
+            "# spigot class mappings",
+            "a net/minecraft/server/Level",
+            "b net/minecraft/server/World",
+            "");
+    private static final String MOJANG_MAPPINGS = String.join("\n",
+            "# compiler: R8",
+            "net.minecraft.world.level.Level -> a:",
+            "    long time -> a",
+            "    1:4:net.minecraft.world.level.World getWorld(int) -> b",
+            "net.minecraft.world.level.World -> b:",
+            "    java.lang.String name -> a",
+            "");
+
+    @TempDir
+    File directory;
+
+    private String remote;
+    private MappingsServer server;
+
+    @BeforeEach
+    void startServer() throws IOException, GitAPIException, NoSuchAlgorithmException {
+        String sha1 = sha1(MOJANG_MAPPINGS);
+        String mappingsUrl = "https://piston-data.mojang.com/v1/objects/" + sha1 + "/server.txt";
+
+        File work = new File(directory, "work");
+        String revision;
+        try(Git git = Git.init().setDirectory(work).call()) {
+            write(work, "info.json", "{\"minecraftVersion\":\"9.9\",\"mappingsUrl\":\"" + mappingsUrl + "\","
+                    + "\"classMappings\":\"bukkit-cl.csrg\",\"toolsVersion\":1}");
+            write(work, "mappings/bukkit-cl.csrg", CLASS_MAPPINGS);
+            git.add().addFilepattern(".").call();
+            revision = git.commit()
+                    .setMessage("9.9")
+                    .setAuthor("builddata", "builddata@example.com")
+                    .setCommitter("builddata", "builddata@example.com")
+                    .call()
+                    .getName();
+        }
+        File bare = new File(directory, "remote.git");
+        Git.cloneRepository().setBare(true).setURI(work.toURI().toString()).setDirectory(bare).call().close();
+        remote = bare.toURI().toString();
+
+        DownloadCache cache = new DownloadCache(new File(directory, "download-cache"));
+        cache.put(new URL("https://hub.spigotmc.org/versions/9.9.json"),
+                stream("{\"name\":\"9.9\",\"refs\":{\"BuildData\":\"" + revision + "\"},\"toolsVersion\":1}"));
+        cache.put(new URL(mappingsUrl), stream(MOJANG_MAPPINGS));
+
+        server = new MappingsServer(0, new File(directory, "builddata-{rev}").getPath(), remote,
+                new File(directory, "builddata.git"), cache.getDirectory(), 2, 2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void answersLookups() throws IOException {
+        assertResponse(200, "net/minecraft/server/Level", "/9.9/class?name=a&from=obf&to=spigot");
+        assertResponse(200, "net/minecraft/world/level/World", "/9.9/class?name=net/minecraft/server/World&from=spigot&to=mojang");
+        assertResponse(200, "time", "/9.9/field?owner=a&name=a&from=obf&to=mojang");
+        assertResponse(200, "getWorld", "/9.9/method?owner=a&name=b&desc=(I)Lb;&from=obf&to=mojang");
+        assertResponse(200, "9.9", "/versions");
+    }
+
+    @Test
+    void servesTheCombinedMappings() throws IOException {
+        int[] code = new int[1];
+        byte[] served = request("/9.9/combined.csrg", code);
+
+        assertEquals(200, code[0]);
+        assertArrayEquals(Files.readAllBytes(new File(directory, "builddata-9.9/spigot-9.9-combined.csrg").toPath()), served);
+        assertEquals(String.join("\n",
+                "# spigot class mappings",
+                "a net/minecraft/server/Level",
+                "b net/minecraft/server/World",
+                "a a time",
+                "a b (I)Lb; getWorld",
+                "b a name",
+                ""), new String(served, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void generatesTheSameFilesAsTheSeparateCalls() throws IOException {
+        assertResponse(200, "net/minecraft/server/Level", "/9.9/class?name=a&from=obf&to=spigot");
+
+        File separateDir = new File(directory, "separate-9.9");
+        try(SpigotMappingsDownloader downloader = new SpigotMappingsDownloader(separateDir, "9.9", remote,
+                new File(directory, "builddata.git"), new File(directory, "download-cache"))) {
+            downloader.generateCombinedMappings(false);
+            downloader.generateBinaryMappings(false);
+        }
+        for(String name : new String[]{"spigot-9.9-combined.csrg", "spigot-9.9.bmap"}) {
+            assertArrayEquals(Files.readAllBytes(new File(separateDir, name).toPath()),
+                    Files.readAllBytes(new File(directory, "builddata-9.9/" + name).toPath()), name);
+        }
+    }
+
+    @Test
+    void rejectsBadRequests() throws IOException {
+        assertResponse(404, "Unknown field", "/9.9/field?owner=a&name=z&from=obf&to=mojang");
+        assertResponse(400, "Missing query parameter: name", "/9.9/class?from=obf&to=spigot");
+        assertResponse(400, "Unknown namespace: bogus", "/9.9/class?name=a&from=bogus&to=spigot");
+        assertResponse(404, "Unknown path", "/9.9/package?from=obf&to=spigot");
+    }
+
+    @Test
+    void unknownVersionsAreNotFound() throws IOException {
+        assertResponse(404, "Unknown version: -9.9", "/-9.9/class?name=a&from=obf&to=spigot");
+    }
+
+    @Test
+    void failedLoadsAreInternalErrors() throws IOException {
+        // the mirror directory is already used for another repository, which is a setup error and not a missing version
+        File mirrorDir = new File(directory, "other.git");
+        BuildDataMirror.get(mirrorDir, "https://example.com/builddata.git");
+        try(MappingsServer other = new MappingsServer(0, new File(directory, "other-{rev}").getPath(), remote,
+                mirrorDir, new File(directory, "download-cache"), 1, 1)) {
+            int[] code = new int[1];
+            String body = new String(request(other, "/9.9/class?name=a&from=obf&to=spigot", code), StandardCharsets.UTF_8);
+            assertEquals(500, code[0], body);
+        }
+    }
+
+    private void assertResponse(int code, String body, String path) throws IOException {
+        int[] actual = new int[1];
+        assertEquals(body, new String(request(path, actual), StandardCharsets.UTF_8));
+        assertEquals(code, actual[0]);
+    }
+
+    private byte[] request(String path, int[] code) throws IOException {
+        return request(server, path, code);
+    }
+
+    private static byte[] request(MappingsServer server, String path, int[] code) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        code[0] = connection.getResponseCode();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try(InputStream input = code[0] < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if(input != null) {
+                IOUtils.copy(input, output);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static InputStream stream(String contents) {
+        return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(String contents) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : MessageDigest.getInstance("SHA-1").digest(contents.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void write(File directory, String path, String contents) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
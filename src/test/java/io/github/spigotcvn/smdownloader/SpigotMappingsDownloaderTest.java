@@ -0,0 +1,171 @@
+package io.github.spigotcvn.smdownloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.spigotcvn.smdownloader.io.AtomicFileOutputStream;
+import io.github.spigotcvn.smdownloader.io.DownloadCache;
+import io.github.spigotcvn.smdownloader.mappings.MappingFile;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Downloads mojang mappings from a local stand-in for Mojang's piston-data server,
+ * which serves the mappings under their SHA-1 like the real one.
+ */
+class SpigotMappingsDownloaderTest {
+    private static final String MOJANG_MAPPINGS = String.join("\n",
+            "# compiler: R8",
+            "net.minecraft.world.level.Level -> a:",
+            "    long time -> a",
+            "");
+
+    @TempDir
+    File directory;
+
+    private HttpServer server;
+    private String sha1;
+    private File cacheDir;
+    private SpigotMappingsDownloader downloader;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile byte[] body = MOJANG_MAPPINGS.getBytes(StandardCharsets.UTF_8);
+
+    @BeforeEach
+    void startServer() throws IOException, GitAPIException, NoSuchAlgorithmException {
+        sha1 = sha1(MOJANG_MAPPINGS.getBytes(StandardCharsets.UTF_8));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/objects/", this::handle);
+        server.start();
+        String mappingsUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/objects/" + sha1 + "/server.txt";
+
+        File work = new File(directory, "work");
+        String revision;
+        try(Git git = Git.init().setDirectory(work).call()) {
+            write(work, "info.json", "{\"minecraftVersion\":\"9.9\",\"mappingsUrl\":\"" + mappingsUrl + "\","
+                    + "\"classMappings\":\"bukkit-cl.csrg\",\"toolsVersion\":1}");
+            write(work, "mappings/bukkit-cl.csrg", "a net/minecraft/server/Level\n");
+            git.add().addFilepattern(".").call();
+            revision = git.commit()
+                    .setMessage("9.9")
+                    .setAuthor("builddata", "builddata@example.com")
+                    .setCommitter("builddata", "builddata@example.com")
+                    .call()
+                    .getName();
+        }
+        File bare = new File(directory, "remote.git");
+        Git.cloneRepository().setBare(true).setURI(work.toURI().toString()).setDirectory(bare).call().close();
+
+        // the version data is served from the cache, only the mappings are downloaded
+        cacheDir = new File(directory, "download-cache");
+        new DownloadCache(cacheDir).put(new URL("https://hub.spigotmc.org/versions/9.9.json"), new ByteArrayInputStream(
+                ("{\"name\":\"9.9\",\"refs\":{\"BuildData\":\"" + revision + "\"},\"toolsVersion\":1}").getBytes(StandardCharsets.UTF_8)));
+        downloader = new SpigotMappingsDownloader(new File(directory, "builddata-9.9"), "9.9", bare.toURI().toString(),
+                new File(directory, "builddata.git"), cacheDir);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void readsTheHashOfMojangObjects() throws IOException {
+        assertEquals("386cbf07a7be445601ea1a86b27978b76b3bb08e", SpigotMappingsDownloader.getMojangObjectHash(
+                new URL("https://piston-data.mojang.com/v1/objects/386CBF07A7BE445601EA1A86B27978B76B3BB08E/server.txt")));
+        assertNull(SpigotMappingsDownloader.getMojangObjectHash(new URL("https://piston-data.mojang.com/v1/objects/386cbf07/server.txt")));
+        assertNull(SpigotMappingsDownloader.getMojangObjectHash(new URL("https://example.com/mappings/server.txt")));
+    }
+
+    @Test
+    void downloadsMappingsOnce() throws IOException {
+        MappingFile mappings = downloader.downloadMojangMappings(false);
+        assertNotNull(mappings);
+        assertMappings(mappings.getFile());
+        assertTrue(AtomicFileOutputStream.isIntact(mappings.getFile(), sha1));
+
+        // the intact copy is used as is
+        assertNotNull(downloader.downloadMojangMappings(false));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void rejectsCorruptedDownloadsAndFetchesThemAgain() throws IOException, NoSuchAlgorithmException {
+        body = "net.minecraft.world.level.Level -> b:\n".getBytes(StandardCharsets.UTF_8);
+        assertNull(downloader.downloadMojangMappings(false));
+        assertFalse(new File(directory, "builddata-9.9/mojmaps.txt").exists());
+        // nothing of the corrupted body was kept in the cache, not even a temporary file
+        for(String object : new File(cacheDir, "objects").list()) {
+            assertNotEquals(sha1(body), object);
+            assertFalse(object.endsWith(".tmp"), object);
+        }
+
+        body = MOJANG_MAPPINGS.getBytes(StandardCharsets.UTF_8);
+        MappingFile mappings = downloader.downloadMojangMappings(false);
+        assertNotNull(mappings);
+        assertMappings(mappings.getFile());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void replacesDamagedCopiesFromTheCache() throws IOException {
+        File mojmaps = downloader.downloadMojangMappings(false).getFile();
+        try(RandomAccessFile access = new RandomAccessFile(mojmaps, "rw")) {
+            access.setLength(10);
+        }
+
+        assertMappings(downloader.downloadMojangMappings(false).getFile());
+        assertEquals(1, requests.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        byte[] contents = body;
+        exchange.sendResponseHeaders(200, contents.length);
+        try(OutputStream output = exchange.getResponseBody()) {
+            output.write(contents);
+        }
+    }
+
+    private static void assertMappings(File file) throws IOException {
+        assertEquals(MOJANG_MAPPINGS, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(byte[] contents) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : MessageDigest.getInstance("SHA-1").digest(contents)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void write(File directory, String path, String contents) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
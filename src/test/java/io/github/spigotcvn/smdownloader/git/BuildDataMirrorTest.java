@@ -0,0 +1,184 @@
+package io.github.spigotcvn.smdownloader.git;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mirrors a local bare repository with two revisions of builddata and checks them out.
+ */
+class BuildDataMirrorTest {
+    @TempDir
+    File directory;
+
+    private String remote;
+    private String first;
+    private String second;
+    private BuildDataMirror mirror;
+
+    @BeforeEach
+    void createRemote() throws IOException, GitAPIException {
+        File work = new File(directory, "work");
+        try(Git git = Git.init().setDirectory(work).call()) {
+            write(work, "info.json", "{\"classMappings\":\"bukkit-cl.csrg\"}");
+            write(work, "README.md", "builddata");
+            write(work, "mappings/bukkit-cl.csrg", "a net/minecraft/server/Level");
+            write(work, "mappings/bukkit-members.csrg", "a b c");
+            first = commit(git, "first");
+
+            git.rm().addFilepattern("README.md").addFilepattern("mappings/bukkit-members.csrg").call();
+            write(work, "info.json", "{\"classMappings\":\"bukkit-cl.csrg\",\"packageMappings\":\"package.srg\"}");
+            write(work, "mappings/package.srg", "./ net/minecraft/server/");
+            second = commit(git, "second");
+        }
+
+        File bare = new File(directory, "remote.git");
+        Git.cloneRepository().setBare(true).setURI(work.toURI().toString()).setDirectory(bare).call().close();
+        remote = bare.toURI().toString();
+        mirror = BuildDataMirror.get(new File(directory, "builddata.git"), remote);
+    }
+
+    @AfterEach
+    void closeMirror() {
+        mirror.close();
+    }
+
+    @Test
+    void sharesMirrorsOfTheSameRemote() {
+        assertSame(mirror, BuildDataMirror.get(new File(directory, "builddata.git"), remote));
+        assertThrows(IllegalArgumentException.class,
+                () -> BuildDataMirror.get(new File(directory, "builddata.git"), "https://example.com/builddata.git"));
+    }
+
+    @Test
+    void fetchesAndReadsRevisions() throws IOException, GitAPIException {
+        assertFalse(mirror.hasCommit(second));
+        mirror.ensureCommit(second);
+        assertTrue(mirror.hasCommit(second));
+        assertTrue(mirror.hasCommit(first));
+
+        assertArrayEquals("a b c".getBytes(StandardCharsets.UTF_8), mirror.readFile(first, "mappings/bukkit-members.csrg"));
+        assertNull(mirror.readFile(second, "mappings/bukkit-members.csrg"));
+    }
+
+    @Test
+    void fetchesOnlyTheWantedCommit() throws IOException, GitAPIException {
+        mirror.ensureCommit(first);
+
+        assertTrue(mirror.hasCommit(first));
+        // neither the newer commit nor the branch pointing at it were transferred
+        assertFalse(mirror.hasCommit(second));
+        assertTrue(mirror.getRepository().getRefDatabase().getRefsByPrefix("refs/heads/").isEmpty());
+        assertEquals(first, mirror.getRepository().exactRef("refs/builddata/" + first).getObjectId().getName());
+    }
+
+    @Test
+    void fetchesAllBranchesIfTheCommitCanNotBeFetchedById() throws IOException, GitAPIException {
+        String unknown = "0123456789012345678901234567890123456789";
+        assertFalse(mirror.fetchCommit(unknown));
+
+        mirror.ensureCommit(unknown);
+        assertFalse(mirror.hasCommit(unknown));
+        assertTrue(mirror.hasCommit(second));
+        assertFalse(mirror.getRepository().getRefDatabase().getRefsByPrefix("refs/heads/").isEmpty());
+    }
+
+    @Test
+    void fetchesOnceForConcurrentCallers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for(int i = 0; i < 8; i++) {
+                reads.add(executor.submit(() -> {
+                    mirror.ensureCommit(second);
+                    return mirror.readFile(second, "mappings/package.srg");
+                }));
+            }
+            for(Future<byte[]> read : reads) {
+                assertArrayEquals("./ net/minecraft/server/".getBytes(StandardCharsets.UTF_8), read.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void checkoutDeletesFilesOfThePreviousRevision() throws IOException, GitAPIException {
+        File target = new File(directory, "builddata");
+        mirror.ensureCommit(second);
+        mirror.checkout(first, target);
+        assertTrue(new File(target, "README.md").isFile());
+        assertTrue(new File(target, "mappings/bukkit-members.csrg").isFile());
+
+        write(target, "spigot-1.20.4-members.csrg", "generated");
+        mirror.checkout(second, target, first);
+
+        assertFalse(new File(target, "README.md").exists());
+        assertFalse(new File(target, "mappings/bukkit-members.csrg").exists());
+        assertEquals("./ net/minecraft/server/", read(target, "mappings/package.srg"));
+        assertEquals("{\"classMappings\":\"bukkit-cl.csrg\",\"packageMappings\":\"package.srg\"}", read(target, "info.json"));
+        assertEquals("generated", read(target, "spigot-1.20.4-members.csrg"));
+    }
+
+    @Test
+    void checkoutWithoutPreviousRevisionCleansSubdirectories() throws IOException, GitAPIException {
+        File target = new File(directory, "builddata");
+        mirror.ensureCommit(second);
+        write(target, "mappings/bukkit-members.csrg", "left over");
+        write(target, "mappings/old/nested.csrg", "left over");
+        write(target, "spigot-1.20.4-members.csrg", "generated");
+
+        mirror.checkout(second, target);
+
+        assertFalse(new File(target, "mappings/bukkit-members.csrg").exists());
+        assertFalse(new File(target, "mappings/old").exists());
+        assertTrue(new File(target, "mappings/bukkit-cl.csrg").isFile());
+        assertEquals("generated", read(target, "spigot-1.20.4-members.csrg"));
+    }
+
+    @Test
+    void checkoutOfUnknownRevisionFails() {
+        assertThrows(IOException.class, () -> mirror.checkout(first, new File(directory, "builddata")));
+    }
+
+    private static String commit(Git git, String message) throws GitAPIException {
+        git.add().addFilepattern(".").call();
+        return git.commit()
+                .setMessage(message)
+                .setAuthor("builddata", "builddata@example.com")
+                .setCommitter("builddata", "builddata@example.com")
+                .call()
+                .getName();
+    }
+
+    private static void write(File directory, String path, String contents) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File directory, String path) throws IOException {
+        return new String(Files.readAllBytes(new File(directory, path).toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomicFileOutputStreamTest {
+    // SHA-1 of "mappings"
+    private static final String SHA1 = "f5b465b16b24ffb0fcef00b86b8635439206dbb5";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void commitWritesFileAndSidecar() throws IOException {
+        File file = write("mappings");
+
+        assertEquals("mappings", read(file));
+        assertEquals(SHA1, AtomicFileOutputStream.readChecksum(file));
+        String[] sidecar = read(AtomicFileOutputStream.checksumFile(file)).trim().split(" ");
+        assertEquals(3, sidecar.length);
+        assertEquals(String.valueOf(file.length()), sidecar[1]);
+        assertEquals(String.valueOf(file.lastModified()), sidecar[2]);
+        assertTrue(AtomicFileOutputStream.isIntact(file));
+    }
+
+    @Test
+    void closeWithoutCommitKeepsPreviousFile() throws IOException {
+        File file = write("mappings");
+        try(AtomicFileOutputStream output = new AtomicFileOutputStream(file)) {
+            output.write("partial".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("mappings", read(file));
+        // only the file and its sidecar, the temporary file is gone
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test
+    void commitRejectsUnexpectedHash() throws IOException {
+        File file = write("mappings");
+        AtomicFileOutputStream output = new AtomicFileOutputStream(file);
+        output.write("corrupted".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> output.commit("0000000000000000000000000000000000000000"));
+        assertEquals("mappings", read(file));
+    }
+
+    @Test
+    void changedFilesAreHashedAgain() throws IOException {
+        File file = write("mappings");
+        long modified = file.lastModified();
+
+        // same length and time, the sidecar is trusted
+        overwrite(file, "mapping5", modified);
+        assertEquals(SHA1, AtomicFileOutputStream.readChecksum(file));
+        assertTrue(AtomicFileOutputStream.isIntact(file));
+
+        // another time, the file is hashed
+        overwrite(file, "mapping5", modified - 2000);
+        assertNull(AtomicFileOutputStream.readChecksum(file));
+        assertFalse(AtomicFileOutputStream.isIntact(file));
+
+        overwrite(file, "mappings", modified - 2000);
+        assertNull(AtomicFileOutputStream.readChecksum(file));
+        assertTrue(AtomicFileOutputStream.isIntact(file));
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        File file = write("mappings");
+        long modified = file.lastModified();
+        try(RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(4);
+        }
+        file.setLastModified(modified);
+
+        assertNull(AtomicFileOutputStream.readChecksum(file));
+        assertFalse(AtomicFileOutputStream.isIntact(file));
+    }
+
+    @Test
+    void sidecarsWithoutTimeAreNotTrusted() throws IOException {
+        File file = write("mappings");
+        String sha1 = IOUtils.sha1(file);
+        Files.write(AtomicFileOutputStream.checksumFile(file).toPath(),
+                (sha1 + " " + file.length() + "\n").getBytes(StandardCharsets.UTF_8));
+
+        // the file is written and hashed again instead
+        assertNull(AtomicFileOutputStream.readChecksum(file));
+        assertFalse(AtomicFileOutputStream.isIntact(file, sha1));
+        assertFalse(AtomicFileOutputStream.isIntact(file, null));
+    }
+
+    private File write(String contents) throws IOException {
+        File file = new File(directory, "mappings.csrg");
+        try(AtomicFileOutputStream output = new AtomicFileOutputStream(file)) {
+            output.write(contents.getBytes(StandardCharsets.UTF_8));
+            output.commit();
+        }
+        return file;
+    }
+
+    private static void overwrite(File file, String contents, long modified) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(modified);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
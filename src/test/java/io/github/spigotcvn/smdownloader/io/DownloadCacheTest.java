@@ -0,0 +1,150 @@
+package io.github.spigotcvn.smdownloader.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Serves a file with an ETag from a local HTTP server and checks how the cache revalidates it.
+ */
+class DownloadCacheTest {
+    @TempDir
+    File directory;
+
+    private HttpServer server;
+    private URL url;
+    private DownloadCache cache;
+
+    // the If-None-Match header of every request, null if there was none
+    private final List<String> validators = Collections.synchronizedList(new ArrayList<>());
+    private volatile String body = "version 1";
+    private volatile String eTag = "\"v1\"";
+    private volatile Runnable beforeNotModified = () -> {};
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/versions/1.20.4.json", this::handle);
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/versions/1.20.4.json");
+        cache = new DownloadCache(new File(directory, "cache"));
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void freshEntriesAreServedWithoutRequests() throws IOException {
+        assertEquals("version 1", download(Long.MAX_VALUE));
+        assertEquals("version 1", download(Long.MAX_VALUE));
+
+        assertEquals(Collections.singletonList(null), validators);
+    }
+
+    @Test
+    void notModifiedServesTheCachedContents() throws IOException {
+        assertEquals("version 1", download(0));
+        assertEquals("version 1", download(0));
+
+        assertEquals(Arrays.asList(null, "\"v1\""), validators);
+    }
+
+    @Test
+    void changedContentsReplaceTheEntryAndItsValidators() throws IOException {
+        assertEquals("version 1", download(0));
+        body = "version 2";
+        eTag = "\"v2\"";
+        assertEquals("version 2", download(0));
+        assertEquals("version 2", download(0));
+
+        assertEquals(Arrays.asList(null, "\"v1\"", "\"v2\""), validators);
+    }
+
+    @Test
+    void evictionDuringRevalidationKeepsTheNewValidators() throws IOException {
+        assertEquals("version 1", download(0));
+        // another process evicts the contents while the server answers the conditional request
+        beforeNotModified = () -> {
+            for(File object : new File(cache.getDirectory(), "objects").listFiles()) {
+                object.delete();
+            }
+        };
+        assertEquals("version 1", download(0));
+        beforeNotModified = () -> {};
+        assertEquals("version 1", download(0));
+
+        // the fetch after the eviction is unconditional, the one after it must revalidate again
+        assertEquals(Arrays.asList(null, "\"v1\"", null, "\"v1\""), validators);
+    }
+
+    @Test
+    void staleContentsAreServedWhenTheServerIsGone() throws IOException {
+        assertEquals("version 1", download(0));
+        server.stop(0);
+
+        assertEquals("version 1", download(0));
+    }
+
+    @Test
+    void getDoesNotTouchTheNetwork() throws IOException {
+        assertNull(cache.get(url));
+        download(0);
+        try(InputStream input = cache.get(url)) {
+            assertEquals("version 1", read(input));
+        }
+
+        assertEquals(1, validators.size());
+    }
+
+    private String download(long maxAge) throws IOException {
+        try(InputStream input = cache.download(url, maxAge)) {
+            return read(input);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        validators.add(ifNoneMatch);
+        if(eTag.equals(ifNoneMatch)) {
+            beforeNotModified.run();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] contents = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.sendResponseHeaders(200, contents.length);
+        try(OutputStream output = exchange.getResponseBody()) {
+            output.write(contents);
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        IOUtils.copy(input, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads files with lines around and beyond the size of the read buffer and compares them to {@link BufferedReader}.
+ */
+class ByteLineReaderTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void readsLinesAcrossBufferBoundaries() throws IOException {
+        String contents = randomLines(new Random(3), 4000, 200);
+        assertReadsLikeBufferedReader(contents);
+        assertReadsLikeBufferedReader(contents.replace("\n", "\r\n"));
+        assertReadsLikeBufferedReader(contents.replace("\n", "\r"));
+    }
+
+    @Test
+    void readsLinesLongerThanTheBuffer() throws IOException {
+        String contents = randomLines(new Random(5), 6, 300 * 1024);
+        assertReadsLikeBufferedReader(contents);
+        assertReadsLikeBufferedReader(contents.replace("\n", "\r\n"));
+    }
+
+    @Test
+    void readsCarriageReturnAtTheEndOfTheBuffer() throws IOException {
+        // the \r is the last byte of the first read, the \n the first byte of the second
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 64 * 1024 - 1; i++) {
+            contents.append('a');
+        }
+        contents.append("\r\nb\r\n\r\nc");
+        assertReadsLikeBufferedReader(contents.toString());
+    }
+
+    @Test
+    void reportsFileOffsetsOfRanges() throws IOException {
+        // ascii only, so positions in the string are positions in the file
+        String contents = randomLines(new Random(7), 3000, 100).replace('é', 'e');
+        File file = write(contents);
+        List<String> lines = readLines(contents);
+        long start = contents.indexOf('\n', contents.length() / 3) + 1;
+
+        try (ByteLineReader reader = ByteLineReader.open(file, start, file.length())) {
+            int line = lines.size() - countLines(contents.substring((int) start));
+            while (reader.next()) {
+                long offset = reader.offset(reader.start());
+                assertEquals(lines.get(line), reader.decode(reader.start(), reader.end()));
+                assertTrue(contents.startsWith(lines.get(line), (int) offset));
+                line++;
+            }
+            assertEquals(lines.size(), line);
+        }
+    }
+
+    @Test
+    void readsBuffersInMemory() throws IOException {
+        String contents = "a b\r\nc d\n\ne";
+        ByteLineReader reader = new ByteLineReader(ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(readLines(contents), read(reader));
+        assertFalse(reader.next());
+    }
+
+    private void assertReadsLikeBufferedReader(String contents) throws IOException {
+        File file = write(contents);
+        try (ByteLineReader reader = ByteLineReader.open(file)) {
+            assertEquals(readLines(contents), read(reader));
+        }
+    }
+
+    private static List<String> read(ByteLineReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (reader.next()) {
+            lines.add(reader.decode(reader.start(), reader.end()));
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(String contents) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(contents))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static int countLines(String contents) throws IOException {
+        return readLines(contents).size();
+    }
+
+    private static String randomLines(Random random, int count, int maxLength) {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int length = random.nextInt(maxLength);
+            for (int j = 0; j < length; j++) {
+                // mostly ascii, with some multi-byte characters
+                contents.append(random.nextInt(20) == 0 ? 'é' : (char) ('a' + random.nextInt(26)));
+            }
+            contents.append('\n');
+        }
+        return contents.toString();
+    }
+
+    private File write(String contents) throws IOException {
+        File file = File.createTempFile("lines", ".txt", directory);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks {@link ClassMappings} against the {@link HashBiMap} and {@link MapUtil#deobfClass(String, Map)} it replaces.
+ */
+class ClassMappingsTest {
+    @Test
+    void behavesLikeABiMap() throws IOException {
+        MappingsFixture fixture = MappingsFixture.generate(500, 13);
+        try {
+            BiMap<String, String> expected = HashBiMap.create();
+            ClassMappings mappings = new ClassMappings(new SymbolTable());
+            List<String> names = new ArrayList<>();
+            for (String line : Files.readAllLines(fixture.getClassMappings().toPath(), StandardCharsets.UTF_8)) {
+                String[] split = line.split(" ");
+                if (line.startsWith("#") || split.length != 2) continue;
+                expected.put(split[0], split[1]);
+                mappings.put(split[0], split[1]);
+                names.add(split[0]);
+                names.add(split[1]);
+                names.add(split[0] + "$Unknown$a");
+                names.add(split[1] + "$1");
+            }
+
+            assertEquals(expected.size(), mappings.size());
+            int i = 0;
+            for (Map.Entry<String, String> entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), mappings.getOriginal(i));
+                assertEquals(entry.getValue(), mappings.getMapped(i));
+                i++;
+            }
+            for (String name : names) {
+                assertEquals(expected.get(name), mappings.get(name), name);
+                assertEquals(expected.inverse().get(name), mappings.inverse().get(name), name);
+                assertEquals(MapUtil.deobfClass(name, expected), mappings.map(name), name);
+                assertEquals(MapUtil.deobfClass(name, expected.inverse()), mappings.inverse().map(name), name);
+            }
+        } finally {
+            fixture.delete();
+        }
+    }
+
+    @Test
+    void replacesMappingsInPlace() {
+        ClassMappings mappings = new ClassMappings(new SymbolTable());
+        mappings.put("a", "net/minecraft/Level");
+        mappings.put("b", "net/minecraft/World");
+        mappings.put("a", "net/minecraft/Server");
+
+        assertEquals(2, mappings.size());
+        assertEquals("a", mappings.getOriginal(0));
+        assertEquals("net/minecraft/Server", mappings.getMapped(0));
+        assertNull(mappings.inverse().get("net/minecraft/Level"));
+        assertEquals("a", mappings.inverse().get("net/minecraft/Server"));
+        assertThrows(IllegalArgumentException.class, () -> mappings.put("c", "net/minecraft/World"));
+        assertThrows(UnsupportedOperationException.class, () -> mappings.inverse().put("d", "e"));
+    }
+
+    @Test
+    void looksUpRangesOfChars() {
+        ClassMappings mappings = new ClassMappings(new SymbolTable());
+        mappings.put("net/minecraft/Level", "a");
+
+        assertEquals("a", mappings.get("(Lnet/minecraft/Level;)V", 2, 21));
+        assertNull(mappings.get("(Lnet/minecraft/Level;)V", 2, 20));
+        StringBuilder out = new StringBuilder();
+        MapUtil.appendObf("(Lnet/minecraft/Level;[Ljava/lang/String;)Lnet/minecraft/Level;", mappings, out);
+        assertEquals("(La;[Ljava/lang/String;)La;", out.toString());
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CsrgWriterTest {
+    private static MappingsFixture fixture;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void generateFixture() throws IOException {
+        fixture = MappingsFixture.generate(300, 5);
+    }
+
+    @AfterAll
+    static void deleteFixture() {
+        fixture.delete();
+    }
+
+    @Test
+    void membersAndFieldsMatchMapUtil() throws IOException {
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(fixture.getClassMappings());
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"), true);
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "fields.csrg"), false);
+
+        MappingTree tree = mapUtil.makeMappingTree(fixture.getMojangMappings());
+        CsrgWriter.writeMembers(tree, new File(directory, "tree-members.csrg"));
+        CsrgWriter.writeFields(tree, new File(directory, "tree-fields.csrg"));
+
+        assertArrayEquals(read("members.csrg"), read("tree-members.csrg"));
+        assertArrayEquals(read("fields.csrg"), read("tree-fields.csrg"));
+    }
+
+    private byte[] read(String name) throws IOException {
+        return Files.readAllBytes(new File(directory, name).toPath());
+    }
+}
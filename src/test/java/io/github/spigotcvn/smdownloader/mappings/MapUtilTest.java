@@ -0,0 +1,131 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the current MapUtil and {@link LegacyMapUtil} on the same generated mappings
+ * and checks that every output file is identical, byte by byte.
+ */
+class MapUtilTest {
+    private static MappingsFixture fixture;
+    private static File expected;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void generateExpected() throws IOException {
+        fixture = MappingsFixture.generate(500, 11);
+        expected = new File(fixture.getDirectory(), "expected");
+        expected.mkdirs();
+
+        LegacyMapUtil legacy = new LegacyMapUtil();
+        legacy.loadBuk(fixture.getClassMappings());
+        legacy.makeFieldMaps(fixture.getMojangMappings(), new File(expected, "members.csrg"), true);
+        legacy.makeFieldMaps(fixture.getMojangMappings(), new File(expected, "fields.csrg"), false);
+        legacy.makeCombinedMaps(new File(expected, "combined.csrg"), new File(expected, "members.csrg"));
+    }
+
+    @AfterAll
+    static void deleteFixture() {
+        for (File file : expected.listFiles()) {
+            file.delete();
+        }
+        expected.delete();
+        fixture.delete();
+    }
+
+    @Test
+    void separateCallsMatchLegacy() throws IOException {
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"), true);
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "fields.csrg"), false);
+        mapUtil.makeCombinedMaps(new File(directory, "combined.csrg"), new File(directory, "members.csrg"));
+
+        assertMatchesLegacy("members.csrg", "fields.csrg", "combined.csrg");
+    }
+
+    @Test
+    void repeatedGenerationMatchesLegacy() throws IOException {
+        // the second pass starts with the caches of the first one
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.makeMappingTree(fixture.getMojangMappings());
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"), true);
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"), true);
+
+        assertMatchesLegacy("members.csrg");
+    }
+
+    @Test
+    void fieldMapsWithoutMethodsMatchLegacy() throws IOException {
+        // without the member pass before it, no mojang class names are known yet
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.makeFieldMaps(fixture.getMojangMappings(), new File(directory, "fields.csrg"), false);
+
+        assertMatchesLegacy("fields.csrg");
+    }
+
+    @Test
+    void fusedCallsMatchLegacy() throws IOException {
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.makeMemberFieldAndCombinedMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"),
+                new File(directory, "fields.csrg"), new File(directory, "combined.csrg"));
+
+        assertMatchesLegacy("members.csrg", "fields.csrg", "combined.csrg");
+    }
+
+    @Test
+    void memberAndFieldCallMatchesLegacy() throws IOException {
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.setSortMemoryLimit(16 * 1024);
+        mapUtil.makeMemberAndFieldMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"),
+                new File(directory, "fields.csrg"));
+
+        assertMatchesLegacy("members.csrg", "fields.csrg");
+    }
+
+    @Test
+    void spilledAndParallelOutputMatchesLegacy() throws IOException {
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.setSortMemoryLimit(16 * 1024);
+        mapUtil.setParallelism(4);
+        mapUtil.makeMemberFieldAndCombinedMaps(fixture.getMojangMappings(), new File(directory, "members.csrg"),
+                new File(directory, "fields.csrg"), new File(directory, "combined.csrg"));
+
+        assertMatchesLegacy("members.csrg", "fields.csrg", "combined.csrg");
+    }
+
+    @Test
+    void combinedMapsFromTreeMatchLegacy() throws IOException {
+        MapUtil mapUtil = loadedMapUtil();
+        mapUtil.setSortMemoryLimit(16 * 1024);
+        mapUtil.makeCombinedMaps(new File(directory, "combined.csrg"), mapUtil.makeMappingTree(fixture.getMojangMappings()));
+
+        assertMatchesLegacy("combined.csrg");
+    }
+
+    private static MapUtil loadedMapUtil() throws IOException {
+        MapUtil mapUtil = new MapUtil();
+        mapUtil.loadBuk(fixture.getClassMappings());
+        return mapUtil;
+    }
+
+    private void assertMatchesLegacy(String... names) throws IOException {
+        for (String name : names) {
+            byte[] legacy = Files.readAllBytes(new File(expected, name).toPath());
+            byte[] current = Files.readAllBytes(new File(directory, name).toPath());
+            assertTrue(legacy.length > 0, name + " is empty");
+            assertArrayEquals(legacy, current, name + " differs from the legacy output");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic spigot class mappings and mojang mappings for the tests and benchmarks.
+ * The shape follows the real files: nested classes, line number ranges, array types,
+ * constructors, lambdas and classes without a spigot mapping.
+ * The same seed and class count always produce the same files.
+ */
+public class MappingsFixture {
+    private static final String[] PRIMITIVES = {"int", "long", "boolean", "byte", "char", "short", "float", "double"};
+    private static final String[] EXTERNAL = {"java.lang.String", "java.util.List", "java.lang.Object", "java.util.Map"};
+    private static final String[] PACKAGES = {"net.minecraft.world.level", "net.minecraft.server.level",
+            "net.minecraft.world.entity", "net.minecraft.network.protocol", "com.mojang.math"};
+
+    private final File directory;
+    private final File classMappings;
+    private final File mojangMappings;
+    private final List<String> mojClasses = new ArrayList<>();
+    private final List<String> obfClasses = new ArrayList<>();
+
+    private MappingsFixture(File directory) {
+        this.directory = directory;
+        this.classMappings = new File(directory, "bukkit-cl.csrg");
+        this.mojangMappings = new File(directory, "mojmaps.txt");
+    }
+
+    /**
+     * Generates a new fixture in a temporary directory.
+     * 1.20 server mappings have roughly 9000 top level classes, which gives a mojmaps file of about 10 MB.
+     * @param classes The amount of top level classes to generate.
+     * @param seed The seed for the generated names and members.
+     * @return The generated fixture.
+     * @throws IOException If the files could not be written.
+     */
+    public static MappingsFixture generate(int classes, long seed) throws IOException {
+        MappingsFixture fixture = new MappingsFixture(Files.createTempDirectory("mappings-fixture").toFile());
+        Random random = new Random(seed);
+        for (int i = 0; i < classes; i++) {
+            String name = PACKAGES[random.nextInt(PACKAGES.length)] + ".Class" + i;
+            String obf = i % 10 == 0 ? name : obfName(i);
+            fixture.mojClasses.add(name);
+            fixture.obfClasses.add(obf);
+
+            int inner = random.nextInt(3);
+            for (int j = 0; j < inner; j++) {
+                fixture.mojClasses.add(name + "$Inner" + j);
+                fixture.obfClasses.add(obf + "$" + obfName(j));
+            }
+        }
+
+        fixture.writeClassMappings(random);
+        fixture.writeMojangMappings(random);
+        return fixture;
+    }
+
+    private void writeClassMappings(Random random) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(classMappings.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# THESE ARE AUTOMATICALLY GENERATED MAPPINGS FOR BENCHMARKING");
+            writer.newLine();
+            for (int i = 0; i < mojClasses.size(); i++) {
+                String obf = obfClasses.get(i);
+                // spigot only maps some nested classes explicitly, and leaves a few classes unmapped
+                if ((obf.contains("$") && random.nextBoolean()) || random.nextInt(20) == 0) {
+                    continue;
+                }
+                String mojName = mojClasses.get(i);
+                writer.write(obf.replace('.', '/') + " net/minecraft/server/" + mojName.substring(mojName.lastIndexOf('.') + 1));
+                writer.newLine();
+            }
+        }
+    }
+
+    private void writeMojangMappings(Random random) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(mojangMappings.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# {\"id\":\"com.android.tools.r8.mapping\",\"version\":\"2.2\"}");
+            writer.newLine();
+            for (int i = 0; i < mojClasses.size(); i++) {
+                writer.write(mojClasses.get(i) + " -> " + obfClasses.get(i) + ":");
+                writer.newLine();
+                writer.write("# {\"fileName\":\"Generated.java\",\"id\":\"sourceFile\"}");
+                writer.newLine();
+
+                int fields = random.nextInt(14);
+                for (int j = 0; j < fields; j++) {
+                    String obf = j % 17 == 3 ? "if" : obfName(j);
+                    String name = random.nextInt(40) == 0 ? "this$0" : "field" + j;
+                    writer.write("    " + randomType(random) + " " + name + " -> " + obf);
+                    writer.newLine();
+                }
+
+                int methods = random.nextInt(20);
+                for (int j = 0; j < methods; j++) {
+                    StringBuilder line = new StringBuilder("    ");
+                    if (random.nextInt(10) < 7) {
+                        int from = 1 + random.nextInt(500);
+                        line.append(from).append(':').append(from + random.nextInt(40)).append(':');
+                    }
+                    line.append(random.nextInt(3) == 0 ? "void" : randomType(random)).append(' ');
+
+                    String name;
+                    String obf;
+                    int kind = random.nextInt(40);
+                    if (kind == 0) {
+                        name = "<init>";
+                        obf = "<init>";
+                    } else if (kind == 1) {
+                        name = "lambda$tick$" + j;
+                        obf = obfName(j);
+                    } else if (kind == 2) {
+                        name = "method" + j;
+                        obf = name;
+                    } else {
+                        name = "method" + j;
+                        obf = obfName(j);
+                    }
+                    line.append(name).append('(');
+                    int args = random.nextInt(5);
+                    for (int k = 0; k < args; k++) {
+                        if (k > 0) line.append(',');
+                        line.append(randomType(random));
+                    }
+                    line.append(") -> ").append(obf);
+
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    private String randomType(Random random) {
+        int kind = random.nextInt(10);
+        String type;
+        if (kind < 4) {
+            type = PRIMITIVES[random.nextInt(PRIMITIVES.length)];
+        } else if (kind < 8) {
+            type = mojClasses.get(random.nextInt(mojClasses.size()));
+        } else {
+            type = EXTERNAL[random.nextInt(EXTERNAL.length)];
+        }
+        int dimensions = random.nextInt(8) < 6 ? 0 : 1 + random.nextInt(2);
+        for (int i = 0; i < dimensions; i++) {
+            type += "[]";
+        }
+        return type;
+    }
+
+    private static String obfName(int index) {
+        StringBuilder name = new StringBuilder();
+        index++;
+        while (index > 0) {
+            index--;
+            name.insert(0, (char) ('a' + index % 26));
+            index /= 26;
+        }
+        return name.toString();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File getClassMappings() {
+        return classMappings;
+    }
+
+    public File getMojangMappings() {
+        return mojangMappings;
+    }
+
+    /**
+     * Deletes the generated files.
+     */
+    public void delete() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,231 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that both ways of reading proguard mappings, from a reader and on the byte level from a file,
+ * report the same entries as the regex based parsing they replaced.
+ */
+class ProguardReaderTest {
+    // the pattern MapUtil used to split member lines before ProguardReader existed
+    private static final Pattern MEMBER_PATTERN = Pattern.compile("(?:\\d+:\\d+:)?(.*?) (.*?) \\-> (.*)");
+
+    private static final String SAMPLE = String.join("\n",
+            "# compiler: R8",
+            "# {\"id\":\"com.android.tools.r8.mapping\",\"version\":\"2.2\"}",
+            "    int beforeAnyClass -> a",
+            "net.minecraft.Util -> ac:",
+            "# {\"fileName\":\"Util.java\",\"id\":\"sourceFile\"}",
+            "    java.util.Map[] maps -> a",
+            "    int if -> if",
+            "    java.lang.String caf\u00e9 -> b",
+            "    boolean this$0 -> c",
+            "",
+            "    1:4:void <init>() -> <init>",
+            "    5:5:void <clinit>() -> <clinit>",
+            "    10:22:net.minecraft.Util$Inner[][] create(int,long[],java.lang.String) -> a",
+            "    30:30:void lambda$tick$0(net.minecraft.Util) -> b",
+            "    void noLines() -> noLines",
+            "    12:long mixed(java.lang.Object) -> c",
+            "\t  int padded   -> d  ",
+            "net.minecraft.Util$Inner -> ac$a:",
+            "    net.minecraft.Util this$0 -> a",
+            "    int get() -> a",
+            "com.mojang.Empty -> b:",
+            "net.minecraft.Last -> c:",
+            "    int value -> a");
+
+    private static MappingsFixture fixture;
+
+    @TempDir
+    File directory;
+
+    @BeforeAll
+    static void generateFixture() throws IOException {
+        fixture = MappingsFixture.generate(300, 7);
+    }
+
+    @AfterAll
+    static void deleteFixture() {
+        fixture.delete();
+    }
+
+    @Test
+    void readsSampleLikeRegex() throws IOException {
+        assertMatchesRegex(SAMPLE);
+    }
+
+    @Test
+    void readsCarriageReturnsLikeRegex() throws IOException {
+        assertMatchesRegex(SAMPLE.replace("\n", "\r\n") + "\r\n");
+        assertMatchesRegex(SAMPLE.replace("\n", "\r"));
+    }
+
+    @Test
+    void readsGeneratedMappingsLikeRegex() throws IOException {
+        String contents = new String(Files.readAllBytes(fixture.getMojangMappings().toPath()), StandardCharsets.UTF_8);
+        assertMatchesRegex(contents);
+    }
+
+    @Test
+    void readsSplitRangesLikeWholeFile() throws IOException {
+        String generated = new String(Files.readAllBytes(fixture.getMojangMappings().toPath()), StandardCharsets.UTF_8);
+        for (String contents : new String[]{SAMPLE, SAMPLE.replace("\n", "\r\n"), SAMPLE.replace("\n", "\r"), generated}) {
+            File file = write(contents);
+            Recorder whole = new Recorder(true);
+            ProguardReader.read(file, whole);
+
+            for (int chunks : new int[]{1, 2, 3, 7, 64}) {
+                long[] bounds = ProguardReader.splitClassBlocks(file, chunks);
+                assertEquals(0, bounds[0]);
+                assertEquals(file.length(), bounds[bounds.length - 1]);
+
+                Recorder classes = new Recorder(true);
+                Recorder ranges = new Recorder(true);
+                for (int i = 0; i < bounds.length - 1; i++) {
+                    try (ByteLineReader lines = ByteLineReader.open(file, bounds[i], bounds[i + 1])) {
+                        ProguardReader.readClasses(lines, classes);
+                    }
+                    try (ByteLineReader lines = ByteLineReader.open(file, bounds[i], bounds[i + 1])) {
+                        ProguardReader.read(lines, ranges);
+                    }
+                }
+                assertEquals(whole.events, ranges.events);
+                assertEquals(filterClasses(whole.events), classes.events);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedLines() throws IOException {
+        for (String malformed : new String[]{"a.B b:", "a.B -> b:\n    int", "a.B -> b:\n    int a b"}) {
+            File file = write(malformed);
+            assertThrows(IOException.class, () -> ProguardReader.read(file, new Recorder(false)));
+            assertThrows(IOException.class, () -> ProguardReader.read(new BufferedReader(new StringReader(malformed)), new Recorder(false)));
+        }
+    }
+
+    private void assertMatchesRegex(String contents) throws IOException {
+        File file = write(contents);
+        for (boolean skipUnrenamed : new boolean[]{false, true}) {
+            List<String> expected = readWithRegex(contents, skipUnrenamed);
+            assertFalse(expected.isEmpty());
+
+            Recorder fromReader = new Recorder(skipUnrenamed);
+            ProguardReader.read(new BufferedReader(new StringReader(contents)), fromReader);
+            assertEquals(expected, fromReader.events);
+
+            Recorder fromFile = new Recorder(skipUnrenamed);
+            ProguardReader.read(file, fromFile);
+            assertEquals(expected, fromFile.events);
+        }
+    }
+
+    private static List<String> filterClasses(List<String> events) {
+        List<String> classes = new ArrayList<>();
+        for (String event : events) {
+            if (event.startsWith("class ")) {
+                classes.add(event);
+            }
+        }
+        return classes;
+    }
+
+    private File write(String contents) throws IOException {
+        File file = File.createTempFile("mojmaps", ".txt", directory);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Parses the mappings the way MapUtil did before ProguardReader, with a regex per member line.
+     * Like ProguardReader, members before the first class are left out,
+     * and members a visitor may skip are filtered out of the result afterwards.
+     */
+    private static List<String> readWithRegex(String contents, boolean skipUnrenamed) throws IOException {
+        List<String> events = new ArrayList<>();
+        boolean inClass = false;
+        try (BufferedReader reader = new BufferedReader(new StringReader(contents))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                if (line.endsWith(":")) {
+                    String[] parts = line.split(" -> ");
+                    String orig = parts[0].replace('.', '/');
+                    String obf = parts[1].substring(0, parts[1].length() - 1).replace('.', '/');
+                    events.add("class " + orig + " " + obf);
+                    inClass = true;
+                } else if (inClass) {
+                    Matcher matcher = MEMBER_PATTERN.matcher(line);
+                    matcher.find();
+
+                    String type = matcher.group(1);
+                    String nameDesc = matcher.group(2);
+                    String obf = matcher.group(3);
+                    String name = nameDesc.contains("(") ? nameDesc.substring(0, nameDesc.indexOf('(')) : nameDesc;
+                    if (skipUnrenamed && (name.equals(obf) || name.contains("$"))) {
+                        continue;
+                    }
+
+                    if (nameDesc.contains("(")) {
+                        events.add("method " + type + " " + name + " " + nameDesc.substring(nameDesc.indexOf('(')) + " " + obf);
+                    } else {
+                        events.add("field " + type + " " + name + " " + obf);
+                    }
+                }
+            }
+        }
+        return events;
+    }
+
+    private static class Recorder implements ProguardVisitor {
+        private final List<String> events = new ArrayList<>();
+        private final boolean skipUnrenamed;
+
+        Recorder(boolean skipUnrenamed) {
+            this.skipUnrenamed = skipUnrenamed;
+        }
+
+        @Override
+        public void visitClass(String mojName, String obfName) {
+            events.add("class " + mojName + " " + obfName);
+        }
+
+        @Override
+        public void visitField(String type, String mojName, String obfName) {
+            events.add("field " + type + " " + mojName + " " + obfName);
+        }
+
+        @Override
+        public void visitMethod(String returnType, String mojName, String args, String obfName) {
+            events.add("method " + returnType + " " + mojName + " " + args + " " + obfName);
+        }
+
+        @Override
+        public boolean skipsUnrenamedMembers() {
+            return skipUnrenamed;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.spigotcvn.smdownloader.mappings;
+
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.ClassMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.FieldMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.MethodMapping;
+import io.github.spigotcvn.smdownloader.mappings.MappingTree.Namespace;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Writes mapping trees with {@link TinyWriter}, reads them back with {@link TinyReader} and compares the trees.
+ */
+class TinyRoundTripTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void roundTripsClassesMembersAndHeader() throws IOException {
+        MappingTree tree = sampleTree();
+        MappingTree read = roundTrip(tree);
+
+        assertEquals(describe(tree), describe(read));
+        assertEquals(Arrays.asList("# THESE ARE AUTOMATICALLY GENERATED MAPPINGS", "# spigot 1.20.4"), read.getHeader());
+    }
+
+    @Test
+    void roundTripsInnerClasses() throws IOException {
+        MappingTree read = roundTrip(sampleTree());
+
+        ClassMapping inner = read.getClass(Namespace.OBF, "a$b");
+        assertNotNull(inner);
+        assertEquals("net/minecraft/server/Level$Chunk", inner.getName(Namespace.SPIGOT));
+        assertEquals("net/minecraft/world/level/Level$Chunk", inner.getName(Namespace.MOJANG));
+
+        MethodMapping method = inner.getMethod(Namespace.OBF, "a", "(La;)La$b;");
+        assertNotNull(method);
+        assertEquals("(Lnet/minecraft/server/Level;)Lnet/minecraft/server/Level$Chunk;", method.getDescriptor(Namespace.SPIGOT));
+        assertEquals("(Lnet/minecraft/world/level/Level;)Lnet/minecraft/world/level/Level$Chunk;", method.getDescriptor(Namespace.MOJANG));
+    }
+
+    @Test
+    void roundTripsFieldsWithoutDescriptor() throws IOException {
+        MappingTree read = roundTrip(sampleTree());
+
+        FieldMapping field = read.getClass(Namespace.OBF, "a").getField(Namespace.OBF, "c");
+        assertNotNull(field);
+        assertEquals("players", field.getName(Namespace.SPIGOT));
+        for (Namespace namespace : Namespace.values()) {
+            assertNull(field.getDescriptor(namespace));
+        }
+    }
+
+    @Test
+    void roundTripsThroughFiles() throws IOException {
+        MappingTree tree = sampleTree();
+        File file = new File(directory, "mappings.tiny");
+        TinyWriter.write(tree, file);
+
+        assertEquals(describe(tree), describe(TinyReader.read(file)));
+    }
+
+    @Test
+    void roundTripsTreeFromMojangMappings() throws IOException {
+        MappingsFixture fixture = MappingsFixture.generate(200, 3);
+        try {
+            MapUtil mapUtil = new MapUtil();
+            mapUtil.loadBuk(fixture.getClassMappings());
+            MappingTree tree = mapUtil.makeMappingTree(fixture.getMojangMappings());
+
+            assertEquals(describe(tree), describe(roundTrip(tree)));
+        } finally {
+            fixture.delete();
+        }
+    }
+
+    @Test
+    void rejectsUnknownFirstNamespace() {
+        assertThrows(IOException.class, () -> read("tiny\t2\t0\tintermediary\tobf\tspigot\nc\tA\ta\tb\n"));
+        assertThrows(IOException.class, () -> read("tiny\t2\t0\t\tobf\tspigot\nc\t\ta\tb\n"));
+        assertThrows(IOException.class, () -> read("tiny\t2\t0\n"));
+    }
+
+    @Test
+    void readsOtherKnownFirstNamespace() throws IOException {
+        MappingTree tree = read("tiny\t2\t0\tspigot\tobf\nc\tnet/minecraft/server/Level\ta\n"
+                + "\tf\tLnet/minecraft/server/Level;\tinstance\tb\n");
+
+        FieldMapping field = tree.getClass(Namespace.OBF, "a").getField(Namespace.OBF, "b");
+        assertEquals("La;", field.getDescriptor(Namespace.OBF));
+        assertEquals("Lnet/minecraft/server/Level;", field.getDescriptor(Namespace.SPIGOT));
+    }
+
+    private static MappingTree sampleTree() {
+        return MappingTree.builder()
+                .header(Arrays.asList("# THESE ARE AUTOMATICALLY GENERATED MAPPINGS", "# spigot 1.20.4"))
+                .addClass("a", "net/minecraft/server/Level", "net/minecraft/world/level/Level")
+                .addClass("a$b", "net/minecraft/server/Level$Chunk", "net/minecraft/world/level/Level$Chunk")
+                .addClass("b", null, null)
+                .addField("a", "a", "chunk", "chunk",
+                        "La$b;", "Lnet/minecraft/server/Level$Chunk;", "Lnet/minecraft/world/level/Level$Chunk;")
+                .addField("a", "b", null, "seed", "J", "J", "J")
+                .addField("a", "c", "players", "players")
+                .addMethod("a", "a", "getChunk", "getChunk", "(II)La$b;",
+                        "(II)Lnet/minecraft/server/Level$Chunk;", "(II)Lnet/minecraft/world/level/Level$Chunk;")
+                .addMethod("a$b", "a", "create", "create", "(La;)La$b;",
+                        "(Lnet/minecraft/server/Level;)Lnet/minecraft/server/Level$Chunk;",
+                        "(Lnet/minecraft/world/level/Level;)Lnet/minecraft/world/level/Level$Chunk;")
+                .addMethod("b", "a", null, null, "([Ljava/lang/String;)V", "([Ljava/lang/String;)V", "([Ljava/lang/String;)V")
+                .build();
+    }
+
+    private static MappingTree roundTrip(MappingTree tree) throws IOException {
+        StringWriter writer = new StringWriter();
+        TinyWriter.write(tree, writer);
+        return read(writer.toString());
+    }
+
+    private static MappingTree read(String tiny) throws IOException {
+        return TinyReader.read(new BufferedReader(new StringReader(tiny)));
+    }
+
+    /**
+     * Lists everything a tree holds, in the order of the tree.
+     */
+    private static List<String> describe(MappingTree tree) {
+        List<String> lines = new ArrayList<>(tree.getHeader());
+        for (ClassMapping clazz : tree.getClasses()) {
+            lines.add("c " + clazz.getName(Namespace.OBF) + " " + clazz.getName(Namespace.SPIGOT) + " " + clazz.getName(Namespace.MOJANG));
+            for (FieldMapping field : clazz.getFields()) {
+                lines.add("f " + describe(field));
+            }
+            for (MethodMapping method : clazz.getMethods()) {
+                lines.add("m " + describe(method));
+            }
+        }
+        return lines;
+    }
+
+    private static String describe(MappingTree.MemberMapping member) {
+        StringBuilder line = new StringBuilder();
+        for (Namespace namespace : Namespace.values()) {
+            line.append(member.getName(namespace)).append(' ').append(member.getDescriptor(namespace)).append(' ');
+        }
+        return line.toString();
+    }
+}